@@ -0,0 +1,151 @@
+package org.ts.clipharbor.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}, matching benchmarks by name and
+ * parameters, and exits with status 1 when any got slower by more than the threshold (10% by
+ * default) with error margins that do not overlap:
+ *
+ * <pre>java -cp benchmarks/target/benchmarks.jar org.ts.clipharbor.bench.CompareResults baseline.csv current.csv [percent]</pre>
+ */
+public final class CompareResults {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    private CompareResults() {
+    }
+
+    record Result(String key, String mode, double score, double error, String unit) {
+
+        // Throughput modes count operations per unit of time; every other mode measures time per operation.
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: CompareResults BASELINE.csv CURRENT.csv [THRESHOLD_PERCENT]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        int regressions = compare(read(Path.of(args[0])), read(Path.of(args[1])), threshold, System.out);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** Prints one line per benchmark in {@code current}; returns how many regressed. */
+    static int compare(Map<String, Result> baseline, Map<String, Result> current, double thresholdPercent,
+                       PrintStream out) {
+        int regressions = 0;
+        out.printf(Locale.ROOT, "%-72s %14s %14s %9s  %s%n", "Benchmark", "Baseline", "Current", "Change", "");
+        for (Result now : current.values()) {
+            Result before = baseline.get(now.key());
+            if (before == null || !before.unit().equals(now.unit())) {
+                out.printf(Locale.ROOT, "%-72s %14s %14.3f %9s  %s%n", now.key(), "-", now.score(), "", "new");
+                continue;
+            }
+            double change = (now.score() - before.score()) / before.score() * 100;
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean overlap = Math.abs(now.score() - before.score()) <= safe(now.error()) + safe(before.error());
+            String verdict = "";
+            if (worse > thresholdPercent && !overlap) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (-worse > thresholdPercent && !overlap) {
+                verdict = "improved";
+            }
+            out.printf(Locale.ROOT, "%-72s %14.3f %14.3f %+8.1f%%  %s%n", now.key(), before.score(), now.score(),
+                    change, verdict);
+        }
+        out.printf(Locale.ROOT, "%d regression(s) over %.1f%%%n", regressions, thresholdPercent);
+        return regressions;
+    }
+
+    /** Reads a JMH CSV result file, keyed by benchmark name and parameter values. */
+    static Map<String, Result> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) throw new IOException("Empty result file: " + file);
+        List<String> header = splitCsv(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        int error = -1;
+        List<Integer> params = new ArrayList<>();
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).startsWith("Score Error")) error = i;
+            if (header.get(i).startsWith("Param: ")) params.add(i);
+        }
+        if (benchmark < 0 || mode < 0 || score < 0 || unit < 0) {
+            throw new IOException("Not a JMH CSV result file (run with -rf csv): " + file);
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            List<String> f = splitCsv(line);
+            StringBuilder key = new StringBuilder(shortName(f.get(benchmark)));
+            for (int p : params) {
+                if (p < f.size() && !f.get(p).isEmpty()) {
+                    key.append(' ').append(header.get(p).substring(7)).append('=').append(f.get(p));
+                }
+            }
+            results.put(key.toString(), new Result(key.toString(), f.get(mode), number(f.get(score)),
+                    error < 0 ? Double.NaN : number(f.get(error)), f.get(unit)));
+        }
+        return results;
+    }
+
+    // The package is the same for every benchmark and only widens the table.
+    private static String shortName(String benchmark) {
+        String prefix = CompareResults.class.getPackageName() + ".";
+        return benchmark.startsWith(prefix) ? benchmark.substring(prefix.length()) : benchmark;
+    }
+
+    // JMH formats numbers in the default locale, so a decimal comma may show up.
+    private static double number(String value) {
+        return value.isEmpty() || value.equals("NaN") ? Double.NaN : Double.parseDouble(value.replace(',', '.'));
+    }
+
+    private static double safe(double error) {
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,54 @@
+package org.ts.clipharbor.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.ts.clipharbor.extract.DomainFilter;
+import org.ts.clipharbor.extract.VideoUrlExtractor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Script URL extraction: the original per-call regex scan against VideoUrlExtractor. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"65536", "4194304"})
+    public int corpusBytes;
+
+    // One media URL per this many script fragments.
+    @Param({"20", "500"})
+    public int mediaEvery;
+
+    private String corpus;
+    private VideoUrlExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        corpus = ScriptCorpus.generate(corpusBytes, mediaEvery, 42);
+        extractor = new VideoUrlExtractor(DomainFilter.DEFAULT_BLOCKLIST);
+        List<String> legacy = LegacyExtractor.extractVideoUrlsFromText(corpus);
+        List<String> current = extractor.extract(corpus);
+        if (!legacy.equals(current)) {
+            throw new IllegalStateException("Extractors disagree: " + legacy.size() + " vs " + current.size());
+        }
+    }
+
+    @Benchmark
+    public List<String> legacyRegex() {
+        return LegacyExtractor.extractVideoUrlsFromText(corpus);
+    }
+
+    @Benchmark
+    public List<String> scanner() {
+        return extractor.extract(corpus);
+    }
+
+    @Benchmark
+    public boolean domainFilter() {
+        return DomainFilter.DEFAULT_BLOCKLIST.matches("https://cdn.example.com/v/48213/master.m3u8?token=abc");
+    }
+}
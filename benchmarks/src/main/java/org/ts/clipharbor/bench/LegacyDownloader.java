@@ -0,0 +1,69 @@
+package org.ts.clipharbor.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Playlist walking and downloading as they were before the download package, kept as the benchmark baseline. */
+final class LegacyDownloader {
+
+    private LegacyDownloader() {
+    }
+
+    static List<String> fetchHlsSegmentsRecursive(String playlistUrl) throws IOException {
+        List<String> segmentUrls = new ArrayList<>();
+        URL url = new URL(playlistUrl);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                URL absoluteUrl = new URL(url, line);
+                if (line.toLowerCase().endsWith(".m3u8")) {
+                    segmentUrls.addAll(fetchHlsSegmentsRecursive(absoluteUrl.toString()));
+                } else {
+                    segmentUrls.add(absoluteUrl.toString());
+                }
+            }
+        }
+        return segmentUrls;
+    }
+
+    static void downloadFile(String fileUrl, File outputFile) throws IOException {
+        URLConnection connection = new URL(fileUrl).openConnection();
+        connection.setConnectTimeout(15_000);
+        connection.setReadTimeout(30_000);
+        try (InputStream in = connection.getInputStream();
+             FileOutputStream out = new FileOutputStream(outputFile)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    static void downloadHlsSegments(List<String> segmentUrls, File outputFile) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(outputFile)) {
+            byte[] buffer = new byte[8192];
+            for (String segUrl : segmentUrls) {
+                URLConnection conn = new URL(segUrl).openConnection();
+                conn.setConnectTimeout(15_000);
+                conn.setReadTimeout(30_000);
+                try (InputStream in = conn.getInputStream()) {
+                    int bytesRead;
+                    while ((bytesRead = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, bytesRead);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.ts.clipharbor.bench;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** Page extraction as it was before PageAnalyzer and VideoUrlExtractor, kept as the benchmark baseline. */
+final class LegacyExtractor {
+
+    private static final Set<String> blockedDomains = Set.of(
+            "doubleclick", "googletag", "adservice", "facebook", "analytics", "tracking"
+    );
+
+    private LegacyExtractor() {
+    }
+
+    static List<String> fetchMp4Links(String pageUrl) throws IOException {
+        List<String> videos = new ArrayList<>();
+        Document doc = Jsoup.connect(pageUrl)
+                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64)")
+                .timeout(15_000)
+                .get();
+        for (Element el : doc.select(
+                "video[src$=.mp4], video > source[src$=.mp4], a[href$=.mp4], a[href$=.m3u8], a[href$=.ts]")) {
+            String videoUrl = el.hasAttr("src") ? el.absUrl("src") : el.absUrl("href");
+            if (!videoUrl.isEmpty() && blockedDomains.stream().noneMatch(videoUrl::contains)) {
+                videos.add(videoUrl);
+            }
+        }
+        return videos;
+    }
+
+    // Fetched and parsed the page a second time; eachText() also skipped every script body.
+    static List<String> fetchVideoUrlsFromScripts(String pageUrl) throws IOException {
+        List<String> found = new ArrayList<>();
+        Document doc = Jsoup.connect(pageUrl)
+                .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64)")
+                .timeout(15_000)
+                .get();
+        for (String script : doc.select("script").eachText()) {
+            found.addAll(extractVideoUrlsFromText(script));
+        }
+        return found.stream().distinct().collect(Collectors.toList());
+    }
+
+    static List<String> extractVideoUrlsFromText(String text) {
+        List<String> found = new ArrayList<>();
+        String regex = "(https?:\\\\?/\\\\?/[^\"'\\s]+\\.(mp4|m3u8|ts))";
+        java.util.regex.Matcher m = java.util.regex.Pattern.compile(regex).matcher(text);
+        while (m.find()) {
+            String url = m.group(1).replaceAll("\\\\/", "/");
+            if (blockedDomains.stream().noneMatch(url.toLowerCase()::contains)) {
+                found.add(url);
+            }
+        }
+        return found;
+    }
+}
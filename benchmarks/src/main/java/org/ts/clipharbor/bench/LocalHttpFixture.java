@@ -0,0 +1,106 @@
+package org.ts.clipharbor.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process HTTP server on a loopback port serving byte arrays from memory, so benchmarks
+ * measure the client and not the network or the disk of a real origin. It answers {@code GET}
+ * and {@code HEAD}, single byte ranges with {@code 206}, and sends an {@code ETag} so range
+ * downloads take the same path they take against a real CDN.
+ */
+final class LocalHttpFixture implements AutoCloseable {
+
+    // Headers and body go out as separate writes; with Nagle on, small responses wait out the
+    // client's delayed ACK and every request costs about 40 ms. Read once, before the first server.
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    private record Resource(String contentType, byte[] body, String etag) {}
+
+    LocalHttpFixture() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fixture-http-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** Serves {@code body} at {@code path}; returns its absolute URL. */
+    String put(String path, String contentType, byte[] body) {
+        resources.put(path, new Resource(contentType, body, "\"" + body.length + "-" + Integer.toHexString(path.hashCode()) + "\""));
+        return url(path);
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Resource resource = resources.get(exchange.getRequestURI().getPath());
+            String method = exchange.getRequestMethod();
+            if (resource == null || !(method.equals("GET") || method.equals("HEAD"))) {
+                exchange.sendResponseHeaders(resource == null ? 404 : 405, -1);
+                return;
+            }
+            byte[] body = resource.body();
+            exchange.getResponseHeaders().set("Content-Type", resource.contentType());
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", resource.etag());
+
+            int status = 200;
+            int start = 0;
+            int end = body.length - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+                String[] bounds = range.substring(6).split("-", -1);
+                start = Integer.parseInt(bounds[0].trim());
+                end = bounds[1].isBlank() ? end : Math.min(end, Integer.parseInt(bounds[1].trim()));
+                if (start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            }
+            int length = end - start + 1;
+            if (method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", Integer.toString(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, start, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.ts.clipharbor.bench;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.ts.clipharbor.extract.DomainFilter;
+import org.ts.clipharbor.extract.PageAnalyzer;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page extraction over loopback HTTP: the original fetchMp4Links plus script fetch, which loaded
+ * and parsed the page twice, against one PageAnalyzer pass, and the analyzer on a parsed page alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageBenchmark {
+
+    @Param({"262144", "2097152"})
+    public int scriptBytes;
+
+    private LocalHttpFixture fixture;
+    private String pageUrl;
+    private PageAnalyzer analyzer;
+    private Document document;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new LocalHttpFixture();
+        String mediaUrl = fixture.put("/media/clip.mp4", "video/mp4", SyntheticMedia.mp4(64 * 1024, 1));
+        String playlistUrl = fixture.put("/hls/master.m3u8", "application/vnd.apple.mpegurl",
+                SyntheticMedia.masterPlaylist("v0.m3u8").getBytes(StandardCharsets.UTF_8));
+        byte[] page = SyntheticMedia.scriptHeavyPage(mediaUrl, playlistUrl, scriptBytes, 42);
+        pageUrl = fixture.put("/watch.html", "text/html; charset=utf-8", page);
+
+        analyzer = new PageAnalyzer(new HttpService(HttpService.DEFAULT_CONNECT_TIMEOUT, HttpService.DEFAULT_REQUEST_TIMEOUT,
+                HttpService.DEFAULT_USER_AGENT), DomainFilter.DEFAULT_BLOCKLIST, Log.NONE);
+        document = Jsoup.parse(new String(page, StandardCharsets.UTF_8), pageUrl);
+        PageAnalyzer.PageAnalysis analysis = analyzer.analyze(pageUrl);
+        if (!analysis.links().contains(mediaUrl) || analysis.scriptUrls().isEmpty()) {
+            throw new IllegalStateException("Fixture page yielded " + analysis.links() + " and "
+                    + analysis.scriptUrls().size() + " script URLs");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void legacyFetchMp4Links(Blackhole bh) throws IOException {
+        bh.consume(LegacyExtractor.fetchMp4Links(pageUrl));
+        bh.consume(LegacyExtractor.fetchVideoUrlsFromScripts(pageUrl));
+    }
+
+    @Benchmark
+    public PageAnalyzer.PageAnalysis pageAnalyzer() throws IOException {
+        return analyzer.analyze(pageUrl);
+    }
+
+    @Benchmark
+    public PageAnalyzer.PageAnalysis parsedDocument() {
+        return analyzer.analyze(document);
+    }
+}
@@ -0,0 +1,88 @@
+package org.ts.clipharbor.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.ts.clipharbor.hls.HlsParser;
+import org.ts.clipharbor.hls.HlsPlaylist;
+import org.ts.clipharbor.hls.HlsResolver;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playlist parsing in memory, and resolving a two-level master over loopback HTTP: the original
+ * recursive walk, which fetched every rendition one after another, against HlsResolver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaylistBenchmark {
+
+    @Param({"100", "2000"})
+    public int segments;
+
+    private LocalHttpFixture fixture;
+    private URI mediaUri;
+    private String mediaText;
+    private URI masterUri;
+    private String masterText;
+    private String indexUrl;
+    private HlsResolver resolver;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new LocalHttpFixture();
+        mediaText = SyntheticMedia.mediaPlaylist("seg", segments, 6.0);
+        masterText = SyntheticMedia.masterPlaylist("1080/index.m3u8", "540/index.m3u8", "270/index.m3u8");
+        for (String rendition : List.of("1080", "540", "270")) {
+            fixture.put("/hls/" + rendition + "/index.m3u8", "application/vnd.apple.mpegurl",
+                    mediaText.getBytes(StandardCharsets.UTF_8));
+        }
+        masterUri = URI.create(fixture.put("/hls/master.m3u8", "application/vnd.apple.mpegurl",
+                masterText.getBytes(StandardCharsets.UTF_8)));
+        mediaUri = masterUri.resolve("1080/index.m3u8");
+        // A master whose only variant is another master, as some CDNs serve behind a redirecting entry point.
+        indexUrl = fixture.put("/hls/index.m3u8", "application/vnd.apple.mpegurl",
+                SyntheticMedia.masterPlaylist("master.m3u8").getBytes(StandardCharsets.UTF_8));
+
+        // A zero TTL makes every resolve fetch again, as the legacy walk does.
+        resolver = new HlsResolver(new HttpService(HttpService.DEFAULT_CONNECT_TIMEOUT,
+                HttpService.DEFAULT_REQUEST_TIMEOUT, HttpService.DEFAULT_USER_AGENT), Duration.ZERO, Log.NONE);
+        int resolved = resolver.resolve(indexUrl).segments().size();
+        if (resolved != segments) throw new IllegalStateException("Resolved " + resolved + " segments");
+    }
+
+    @TearDown
+    public void tearDown() {
+        resolver.shutdown();
+        fixture.close();
+    }
+
+    @Benchmark
+    public HlsPlaylist parseMedia() {
+        return HlsParser.parse(mediaUri, mediaText);
+    }
+
+    @Benchmark
+    public HlsPlaylist parseMaster() {
+        return HlsParser.parse(masterUri, masterText);
+    }
+
+    @Benchmark
+    public List<String> legacyResolve() throws IOException {
+        return LegacyDownloader.fetchHlsSegmentsRecursive(indexUrl);
+    }
+
+    @Benchmark
+    public HlsResolver.ResolvedStream resolve() throws IOException {
+        return resolver.resolve(indexUrl);
+    }
+}
@@ -0,0 +1,43 @@
+package org.ts.clipharbor.bench;
+
+import java.util.Random;
+
+/** Deterministic synthetic inline-script text: bundled JS, JSON configs, tracker and media URLs. */
+final class ScriptCorpus {
+
+    private static final String[] FILLER = {
+            "function(e,t){return e&&t?e.concat(t):[]}",
+            "var n=document.querySelector(\"#player\");",
+            "\"title\":\"Episode 12 - The Harbor\",\"duration\":1432,",
+            "if(window.__INITIAL_STATE__){render(window.__INITIAL_STATE__)}",
+            "\"thumbnail\":\"https:\\/\\/img.example.com\\/thumbs\\/1200x675.jpg\",",
+            "track('view', {category: 'video', id: 48213});",
+            "\"link\":\"https://www.example.com/watch?v=8f3a9\",",
+    };
+
+    private static final String[] MEDIA = {
+            "\"hls\":\"https:\\/\\/cdn.example.com\\/v\\/%d\\/master.m3u8\",",
+            "src: 'https://media.example.net/clips/%d/1080p.mp4',",
+            "\"seg\":\"http://edge%d.example.org/live/chunk_0001.ts\",",
+            "\"ad\":\"https://securepubads.doubleclick.net/vast/%d/preroll.mp4\",",
+            "\"beacon\":\"https://analytics.example.com/p/%d/pixel.mp4\",",
+    };
+
+    private ScriptCorpus() {
+    }
+
+    static String generate(int approxBytes, int mediaEveryN, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(approxBytes + 256);
+        int i = 0;
+        while (sb.length() < approxBytes) {
+            if (++i % mediaEveryN == 0) {
+                sb.append(String.format(MEDIA[random.nextInt(MEDIA.length)], random.nextInt(100_000)));
+            } else {
+                sb.append(FILLER[random.nextInt(FILLER.length)]);
+            }
+            sb.append(random.nextBoolean() ? '\n' : ' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package org.ts.clipharbor.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/** Deterministic stand-ins for what the pipeline downloads: MP4 files, TS segments, playlists and pages. */
+final class SyntheticMedia {
+
+    static final int TS_PACKET = 188;
+
+    private SyntheticMedia() {
+    }
+
+    /** An {@code ftyp} box followed by one {@code mdat} box of filler, {@code size} bytes in all. */
+    static byte[] mp4(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        byte[] ftyp = {0, 0, 0, 24, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm', 0, 0, 2, 0, 'i', 's', 'o', 'm', 'm', 'p', '4', '1'};
+        System.arraycopy(ftyp, 0, data, 0, ftyp.length);
+        int mdat = size - ftyp.length;
+        data[24] = (byte) (mdat >>> 24);
+        data[25] = (byte) (mdat >>> 16);
+        data[26] = (byte) (mdat >>> 8);
+        data[27] = (byte) mdat;
+        data[28] = 'm';
+        data[29] = 'd';
+        data[30] = 'a';
+        data[31] = 't';
+        return data;
+    }
+
+    /** Whole 188-byte transport packets with sync bytes and random payload, about {@code size} bytes. */
+    static byte[] tsSegment(int size, long seed) {
+        int packets = Math.max(1, size / TS_PACKET);
+        byte[] data = new byte[packets * TS_PACKET];
+        new Random(seed).nextBytes(data);
+        for (int i = 0; i < packets; i++) data[i * TS_PACKET] = 0x47;
+        return data;
+    }
+
+    /** A VOD media playlist of {@code segments} entries named {@code prefix0.ts}, {@code prefix1.ts}, ... */
+    static String mediaPlaylist(String prefix, int segments, double segmentSeconds) {
+        StringBuilder sb = new StringBuilder(64 + segments * 48);
+        sb.append("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-PLAYLIST-TYPE:VOD\n");
+        sb.append("#EXT-X-TARGETDURATION:").append((int) Math.ceil(segmentSeconds)).append('\n');
+        sb.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        for (int i = 0; i < segments; i++) {
+            sb.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segmentSeconds));
+            sb.append(prefix).append(i).append(".ts\n");
+        }
+        return sb.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    /** A master playlist listing the given variant playlists, highest bandwidth first. */
+    static String masterPlaylist(String... variants) {
+        StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (int i = 0; i < variants.length; i++) {
+            int height = 1080 >> i;
+            sb.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(6_000_000 >> i)
+                    .append(",RESOLUTION=").append(height * 16 / 9).append('x').append(height)
+                    .append(",CODECS=\"avc1.640028,mp4a.40.2\"\n");
+            sb.append(variants[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A page like a video site's: a few direct links and a player tag, buried in inline scripts of
+     * {@code scriptBytes} bytes in all that mention more media URLs.
+     */
+    static byte[] scriptHeavyPage(String mediaUrl, String playlistUrl, int scriptBytes, long seed) {
+        StringBuilder sb = new StringBuilder(scriptBytes + 2048);
+        sb.append("<!DOCTYPE html>\n<html><head><title>Episode 12 - The Harbor</title>\n");
+        int scripts = 8;
+        for (int i = 0; i < scripts; i++) {
+            sb.append("<script>").append(ScriptCorpus.generate(scriptBytes / scripts, 50, seed + i)).append("</script>\n");
+        }
+        sb.append("</head><body>\n<div id=\"player\"><video src=\"").append(mediaUrl).append("\"></video></div>\n");
+        sb.append("<ul>\n");
+        for (int i = 0; i < 40; i++) {
+            sb.append("<li><a href=\"/watch?v=").append(i).append("\">Episode ").append(i).append("</a></li>\n");
+        }
+        sb.append("<li><a href=\"").append(playlistUrl).append("\">Stream</a></li>\n</ul>\n</body></html>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
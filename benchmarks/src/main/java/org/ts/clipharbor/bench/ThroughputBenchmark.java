@@ -0,0 +1,113 @@
+package org.ts.clipharbor.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.ts.clipharbor.download.FileDownloader;
+import org.ts.clipharbor.download.HlsSegmentDownloader;
+import org.ts.clipharbor.download.TransferOptions;
+import org.ts.clipharbor.download.TransferProgress;
+import org.ts.clipharbor.download.TransferStats;
+import org.ts.clipharbor.hls.HlsParser;
+import org.ts.clipharbor.hls.HlsSegment;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Throttle;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end downloads from loopback HTTP to a temporary folder: one MP4 file and one HLS stream
+ * of equal size, each through the original 8 KiB copy loop and through the download package.
+ * Segments are random transport packets, so the HLS path stores them as {@code .ts} without remuxing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    @Param({"33554432"})
+    public int totalBytes;
+
+    @Param({"524288"})
+    public int segmentBytes;
+
+    private LocalHttpFixture fixture;
+    private File folder;
+    private String fileUrl;
+    private List<HlsSegment> segments;
+    private List<String> segmentUrls;
+    private HttpService http;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new LocalHttpFixture();
+        folder = Files.createTempDirectory("clipharbor-bench").toFile();
+        fileUrl = fixture.put("/media/movie.mp4", "video/mp4", SyntheticMedia.mp4(totalBytes, 7));
+
+        int count = Math.max(1, totalBytes / segmentBytes);
+        for (int i = 0; i < count; i++) {
+            fixture.put("/hls/seg" + i + ".ts", "video/mp2t", SyntheticMedia.tsSegment(segmentBytes, i));
+        }
+        String playlist = SyntheticMedia.mediaPlaylist("seg", count, 4.0);
+        String playlistUrl = fixture.put("/hls/index.m3u8", "application/vnd.apple.mpegurl",
+                playlist.getBytes(StandardCharsets.UTF_8));
+        segments = HlsParser.parse(URI.create(playlistUrl), playlist).segments();
+        segmentUrls = new ArrayList<>();
+        for (HlsSegment segment : segments) segmentUrls.add(segment.uri());
+
+        http = new HttpService(HttpService.DEFAULT_CONNECT_TIMEOUT, HttpService.DEFAULT_REQUEST_TIMEOUT,
+                HttpService.DEFAULT_USER_AGENT);
+    }
+
+    // Every download starts from an empty folder, so none of them resumes from the previous one.
+    @TearDown(Level.Invocation)
+    public void deleteOutputs() {
+        File[] files = folder.listFiles();
+        if (files != null) for (File f : files) f.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        deleteOutputs();
+        folder.delete();
+        fixture.close();
+    }
+
+    @Benchmark
+    public void legacyFile() throws IOException {
+        LegacyDownloader.downloadFile(fileUrl, new File(folder, "movie.mp4"));
+    }
+
+    @Benchmark
+    public TransferStats fileSingleStream() throws IOException {
+        return new FileDownloader(http, 1, FileDownloader.DEFAULT_CHUNK_SIZE, TransferOptions.DEFAULT, Throttle.NONE,
+                Log.NONE).download(fileUrl, new File(folder, "movie.mp4"));
+    }
+
+    @Benchmark
+    public TransferStats fileRanged() throws IOException {
+        return new FileDownloader(http, FileDownloader.DEFAULT_CONNECTIONS, totalBytes / 8, TransferOptions.DEFAULT,
+                Throttle.NONE, Log.NONE).download(fileUrl, new File(folder, "movie.mp4"));
+    }
+
+    @Benchmark
+    public void legacySegments() throws IOException {
+        LegacyDownloader.downloadHlsSegments(segmentUrls, new File(folder, "stream.ts"));
+    }
+
+    @Benchmark
+    public TransferStats hlsSegments() throws IOException {
+        return new HlsSegmentDownloader(http, HlsSegmentDownloader.DEFAULT_CONCURRENCY,
+                HlsSegmentDownloader.DEFAULT_MAX_BUFFERED_BYTES, TransferOptions.DEFAULT, false, Throttle.NONE, Log.NONE)
+                .download(segments, List.of(), extension -> new File(folder, "stream" + extension), new TransferProgress());
+    }
+}
@@ -1,6 +1,7 @@
 module org.ts.clipharbor {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.net.http;
 
     requires org.controlsfx.controls;
     requires org.kordamp.ikonli.javafx;
@@ -8,6 +9,7 @@ module org.ts.clipharbor {
     requires org.jsoup;
     requires org.seleniumhq.selenium.api;
     requires org.seleniumhq.selenium.chrome_driver;
+    requires org.seleniumhq.selenium.support;
     requires org.seleniumhq.selenium.devtools_v113;
     requires io.github.bonigarcia.webdrivermanager;
 
@@ -6,15 +6,23 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class ClipHarborApp extends Application {
+    private ClipHarborController controller;
+
     @Override
     public void start(Stage stage) throws Exception {
         FXMLLoader loader = new FXMLLoader(getClass().getResource("clipHarborApp-view.fxml"));
         Scene scene = new Scene(loader.load());
+        controller = loader.getController();
         stage.setTitle("ClipHarbor Video Downloader");
         stage.setScene(scene);
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,121 @@
+package org.ts.clipharbor.browser;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.WebDriverWait;
+import org.ts.clipharbor.extract.DomainFilter;
+import org.ts.clipharbor.log.Log;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Renders a page in a pooled browser and collects media URLs from both the browser's network
+ * traffic and the live DOM. Instead of a fixed sleep it polls until a manifest request has been
+ * captured, a video element has a source, or the page has finished loading and no new resources
+ * have been requested for a short quiet period.
+ */
+public class BrowserExtractor {
+
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(10);
+
+    private static final Duration BORROW_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+
+    private static final String PLAY_VIDEOS =
+            "document.querySelectorAll('video').forEach(v=>{v.muted=true;v.play().catch(()=>{});});";
+
+    private static final String MEDIA_OR_IDLE = """
+            const hasSrc = Array.from(document.querySelectorAll('video')).some(v =>
+                v.currentSrc || v.src || v.querySelector('source[src]'));
+            if (hasSrc) return true;
+            if (document.readyState !== 'complete') return false;
+            const n = performance.getEntriesByType('resource').length;
+            const now = Date.now();
+            if (window.__chResources !== n) { window.__chResources = n; window.__chQuietSince = now; return false; }
+            return now - window.__chQuietSince >= arguments[0];
+            """;
+
+    private static final String COLLECT = """
+            const out = [];
+            function add(u){ if(u) out.push(u.trim()); }
+            document.querySelectorAll('video').forEach(v=>{
+                add(v.currentSrc || v.src);
+                v.querySelectorAll('source').forEach(s=>add(s.src || s.getAttribute('data-src')));
+            });
+            document.querySelectorAll('source').forEach(s=>{
+                add(s.src || s.getAttribute('data-src') || s.getAttribute('data-href'));
+            });
+            document.querySelectorAll('a[href]').forEach(a=>{
+                const h=a.href;
+                if(h && (h.match(/\\.mp4(\\?.*)?$/i) || h.match(/\\.m3u8(\\?.*)?$/i) || h.match(/\\.ts(\\?.*)?$/i))){
+                    add(h);
+                }
+            });
+            return Array.from(new Set(out)).filter(Boolean);
+            """;
+
+    private static final long QUIET_MILLIS = 1_500;
+
+    private final BrowserPool pool;
+    private final DomainFilter blockedDomains;
+    private final Duration maxWait;
+    private final Log log;
+
+    public BrowserExtractor(BrowserPool pool, DomainFilter blockedDomains, Duration maxWait, Log log) {
+        this.pool = pool;
+        this.blockedDomains = blockedDomains;
+        this.maxWait = maxWait;
+        this.log = log;
+    }
+
+    public List<String> extract(String pageUrl) {
+        log.debug(() -> "[Selenium] Rendering: " + pageUrl);
+        Set<String> found = new LinkedHashSet<>();
+        WebDriver driver;
+        try {
+            driver = pool.borrow(BORROW_TIMEOUT);
+        } catch (IOException e) {
+            log.error("[Selenium] " + e.getMessage());
+            return new ArrayList<>();
+        }
+
+        NetworkCapture capture = NetworkCapture.start(driver, blockedDomains, log);
+        try {
+            long start = System.nanoTime();
+            driver.get(pageUrl);
+            JavascriptExecutor js = (JavascriptExecutor) driver;
+            js.executeScript(PLAY_VIDEOS);
+            try {
+                new WebDriverWait(driver, maxWait, POLL_INTERVAL)
+                        .until(d -> (capture != null && capture.manifestSeen())
+                                || Boolean.TRUE.equals(js.executeScript(MEDIA_OR_IDLE, QUIET_MILLIS)));
+            } catch (TimeoutException e) {
+                log.debug(() -> "[Selenium] No media or network idle within " + maxWait.toSeconds() + " s");
+            }
+            log.debug(() -> "[Selenium] Page ready after " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            if (capture != null) found.addAll(capture.captured());
+
+            Object result = js.executeScript(COLLECT);
+            if (result instanceof List<?>) {
+                for (Object o : (List<?>) result) {
+                    if (o == null) continue;
+                    String s = String.valueOf(o).trim();
+                    if (!s.isEmpty() && !blockedDomains.matches(s) && found.add(s)) {
+                        log.debug(() -> "[Selenium] Found video: " + s);
+                    }
+                }
+            }
+            log.debug(() -> "[Selenium] Total candidates found: " + found.size());
+        } catch (RuntimeException e) {
+            log.error("[Selenium] " + e.getMessage());
+        } finally {
+            if (capture != null) capture.close();
+            pool.release(driver);
+        }
+        return new ArrayList<>(found);
+    }
+}
@@ -0,0 +1,165 @@
+package org.ts.clipharbor.browser;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.PageLoadStrategy;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps up to {@code maxSessions} headless Chrome sessions alive between uses. A borrowed driver is
+ * returned with {@link #release}, which clears cookies and storage and parks it on
+ * {@code about:blank}; a driver that fails the reset is quit and replaced on the next borrow.
+ */
+public class BrowserPool implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_SESSIONS = 2;
+
+    private static final String RESET_STORAGE =
+            "try{localStorage.clear();sessionStorage.clear();}catch(e){}";
+
+    private static volatile boolean driverBinaryReady;
+
+    private final int maxSessions;
+    private final boolean headless;
+    private final Log log;
+    private final Semaphore permits;
+    private final BlockingQueue<WebDriver> idle = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    public BrowserPool(int maxSessions, boolean headless, Log log) {
+        if (maxSessions < 1) throw new IllegalArgumentException("maxSessions must be >= 1");
+        this.maxSessions = maxSessions;
+        this.headless = headless;
+        this.log = log;
+        this.permits = new Semaphore(maxSessions);
+    }
+
+    /** Starts sessions in the background so the first fallback does not pay the browser launch. */
+    public void warmUp(int sessions) {
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < Math.min(sessions, maxSessions) && !closed; i++) {
+                if (!permits.tryAcquire()) return;
+                try {
+                    idle.add(launch());
+                } catch (RuntimeException e) {
+                    log.error("[Selenium] Warm-up failed: " + e.getMessage());
+                    return;
+                } finally {
+                    permits.release();
+                }
+            }
+        }, "browser-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public WebDriver borrow(Duration timeout) throws IOException {
+        if (closed) throw new IOException("Browser pool is closed");
+        try {
+            if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("No browser session available within " + timeout.toSeconds() + " s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a browser session");
+        }
+        try {
+            WebDriver driver;
+            while ((driver = idle.poll()) != null) {
+                if (isAlive(driver)) {
+                    log.debug(() -> "[Selenium] Reusing warm session");
+                    return driver;
+                }
+                quietQuit(driver);
+            }
+            return launch();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw new IOException("Could not start ChromeDriver: " + e.getMessage(), e);
+        }
+    }
+
+    public void release(WebDriver driver) {
+        try {
+            if (!closed) {
+                driver.manage().deleteAllCookies();
+                ((JavascriptExecutor) driver).executeScript(RESET_STORAGE);
+                driver.get("about:blank");
+                idle.add(driver);
+            } else {
+                quietQuit(driver);
+            }
+        } catch (RuntimeException e) {
+            log.debug(() -> "[Selenium] Discarding session that failed to reset: " + e.getMessage());
+            quietQuit(driver);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        WebDriver driver;
+        while ((driver = idle.poll()) != null) {
+            quietQuit(driver);
+        }
+    }
+
+    private WebDriver launch() {
+        ensureDriverBinary();
+        ChromeOptions options = new ChromeOptions();
+        if (headless) options.addArguments("--headless=new");
+        // Return from get() at DOMContentLoaded; the extractor waits for media itself.
+        options.setPageLoadStrategy(PageLoadStrategy.EAGER);
+        options.addArguments("--disable-gpu");
+        options.addArguments("--no-sandbox");
+        options.addArguments("--disable-popup-blocking");
+        options.addArguments("--disable-notifications");
+        options.addArguments("--autoplay-policy=no-user-gesture-required");
+        options.addArguments("user-agent=" + HttpService.DEFAULT_USER_AGENT);
+
+        long start = System.nanoTime();
+        WebDriver driver = new ChromeDriver(options);
+        driver.manage().timeouts().pageLoadTimeout(Duration.ofSeconds(30));
+        log.debug(() -> "[Selenium] Launched ChromeDriver in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return driver;
+    }
+
+    private static void ensureDriverBinary() {
+        if (driverBinaryReady) return;
+        synchronized (BrowserPool.class) {
+            if (!driverBinaryReady) {
+                WebDriverManager.chromedriver().setup();
+                driverBinaryReady = true;
+            }
+        }
+    }
+
+    private static boolean isAlive(WebDriver driver) {
+        try {
+            driver.getWindowHandle();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void quietQuit(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (RuntimeException ignored) {}
+    }
+}
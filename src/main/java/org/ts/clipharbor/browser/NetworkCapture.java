@@ -0,0 +1,124 @@
+package org.ts.clipharbor.browser;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.json.Json;
+import org.ts.clipharbor.extract.DomainFilter;
+import org.ts.clipharbor.log.Log;
+
+import java.util.*;
+
+/**
+ * Listens to the browser's network traffic over the Chrome DevTools Protocol and records media
+ * requests as they are issued, including those made by MSE players through XHR or fetch that never
+ * show up in the DOM. Events are read as raw JSON rather than through a versioned devtools model,
+ * so the capture keeps working when Chrome is newer than the bundled CDP bindings.
+ */
+final class NetworkCapture implements AutoCloseable {
+
+    private static final int MAX_CAPTURED = 500;
+
+    private static final Event<Map<String, Object>> REQUEST_WILL_BE_SENT =
+            new Event<>("Network.requestWillBeSent", input -> input.read(Json.MAP_TYPE));
+    private static final Event<Map<String, Object>> RESPONSE_RECEIVED =
+            new Event<>("Network.responseReceived", input -> input.read(Json.MAP_TYPE));
+
+    private final DevTools devTools;
+    private final DomainFilter blockedDomains;
+    private final Log log;
+    private final Set<String> manifests = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Set<String> files = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Set<String> segments = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private NetworkCapture(DevTools devTools, DomainFilter blockedDomains, Log log) {
+        this.devTools = devTools;
+        this.blockedDomains = blockedDomains;
+        this.log = log;
+    }
+
+    /** Starts capturing on {@code driver}, or returns {@code null} if it does not speak CDP. */
+    static NetworkCapture start(WebDriver driver, DomainFilter blockedDomains, Log log) {
+        if (!(driver instanceof HasDevTools)) return null;
+        try {
+            DevTools devTools = ((HasDevTools) driver).getDevTools();
+            devTools.createSessionIfThereIsNotOne();
+            NetworkCapture capture = new NetworkCapture(devTools, blockedDomains, log);
+            devTools.addListener(REQUEST_WILL_BE_SENT, e -> capture.onRequest(e));
+            devTools.addListener(RESPONSE_RECEIVED, e -> capture.onResponse(e));
+            devTools.send(new Command<Void>("Network.enable", Map.of()));
+            return capture;
+        } catch (RuntimeException e) {
+            log.debug(() -> "[Selenium] Network capture unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    boolean manifestSeen() {
+        return !manifests.isEmpty();
+    }
+
+    /** Manifests and whole files; individual segments only when nothing better was seen. */
+    List<String> captured() {
+        List<String> out = new ArrayList<>();
+        synchronized (manifests) {
+            out.addAll(manifests);
+        }
+        synchronized (files) {
+            out.addAll(files);
+        }
+        if (out.isEmpty()) {
+            synchronized (segments) {
+                out.addAll(segments);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        try {
+            devTools.clearListeners();
+            devTools.send(new Command<Void>("Network.disable", Map.of()));
+        } catch (RuntimeException ignored) {}
+    }
+
+    private void onRequest(Map<String, Object> event) {
+        if (event.get("request") instanceof Map<?, ?> request) {
+            consider(String.valueOf(request.get("url")), null);
+        }
+    }
+
+    private void onResponse(Map<String, Object> event) {
+        if (event.get("response") instanceof Map<?, ?> response) {
+            consider(String.valueOf(response.get("url")), String.valueOf(response.get("mimeType")));
+        }
+    }
+
+    private void consider(String url, String mimeType) {
+        if (!url.startsWith("http") || blockedDomains.matches(url)) return;
+        String path = url.toLowerCase(Locale.ROOT);
+        int cut = path.indexOf('?');
+        if (cut >= 0) path = path.substring(0, cut);
+        cut = path.indexOf('#');
+        if (cut >= 0) path = path.substring(0, cut);
+        String mime = mimeType == null ? "" : mimeType.toLowerCase(Locale.ROOT);
+
+        Set<String> target;
+        if (path.endsWith(".m3u8") || mime.contains("mpegurl")) {
+            target = manifests;
+        } else if (path.endsWith(".mp4") || mime.equals("video/mp4")) {
+            target = files;
+        } else if (path.endsWith(".ts") || mime.equals("video/mp2t")) {
+            target = segments;
+        } else {
+            return;
+        }
+        if (manifests.size() + files.size() + segments.size() < MAX_CAPTURED && target.add(url)
+                && target != segments) {
+            log.debug(() -> "[Selenium] Captured request: " + url);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.ts.clipharbor.cli;
+
+import org.ts.clipharbor.engine.ClipHarborEngine;
+import org.ts.clipharbor.engine.EngineSettings;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.log.LogLevel;
+import org.ts.clipharbor.net.BandwidthLimiter;
+import org.ts.clipharbor.net.RetryPolicy;
+import org.ts.clipharbor.queue.DownloadJob;
+import org.ts.clipharbor.queue.JobState;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless entry point. Reads URLs from the arguments, or from standard input when none are given
+ * (or the argument is {@code -}), runs them through the engine's queue and prints one JSON object
+ * per job event on standard output, with a transfer stats snapshot once a job finishes. Log lines go
+ * to standard error. Nothing here touches JavaFX, so
+ * it runs on machines without a display or JavaFX runtime, provided it is launched from the class
+ * path; the module itself requires JavaFX for the GUI:
+ *
+ * <pre>java -cp ClipHarbor.jar:&lt;dependencies&gt; org.ts.clipharbor.cli.ClipHarborCli -o out/ URL...</pre>
+ */
+public final class ClipHarborCli {
+
+    private static final String USAGE = """
+            Usage: ClipHarborCli [options] [URL... | -]
+              -o, --output DIR       folder to save into (default: current directory)
+              -j, --jobs N           jobs running at once (default: %d)
+                  --per-host N       jobs running at once per host (default: %d)
+                  --connections N    parallel range connections per file (default: %d)
+                  --segments N       parallel HLS segment fetches (default: %d)
+                  --retries N        attempts per request, 1 disables retrying (default: %d)
+                  --limit RATE       total download rate in bytes/s, e.g. 500k or 2M (default: unlimited)
+                  --limit-host RATE  download rate per media host
+                  --limit-job RATE   download rate per job
+                  --keep-ts          save HLS transport streams as .ts instead of remuxing to .mp4
+                  --no-cache         analyze every page again instead of using cached results
+                  --warm-browser N   browser sessions to start before a page needs one, 0 for none (default: %d)
+              -v, --verbose          include debug messages in the log
+              -q, --quiet            do not print log lines to stderr
+            URLs are read from stdin, one per line, when none are given or the only one is "-".
+            """;
+
+    private ClipHarborCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        EngineSettings settings = EngineSettings.DEFAULTS;
+        File folder = new File(".");
+        LogLevel logLevel = LogLevel.INFO;
+        boolean quiet = false;
+        List<String> urls = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-o", "--output" -> folder = new File(value(args, ++i, arg));
+                    case "-j", "--jobs" -> settings = settings.withJobLimits(
+                            intValue(args, ++i, arg), settings.maxJobsPerHost());
+                    case "--per-host" -> settings = settings.withJobLimits(
+                            settings.maxRunningJobs(), intValue(args, ++i, arg));
+                    case "--connections" -> settings = settings.withConnections(
+                            intValue(args, ++i, arg), settings.hlsConcurrency());
+                    case "--segments" -> settings = settings.withConnections(
+                            settings.fileConnections(), intValue(args, ++i, arg));
+                    case "--retries" -> {
+                        RetryPolicy p = settings.retryPolicy();
+                        settings = settings.withRetryPolicy(new RetryPolicy(intValue(args, ++i, arg),
+                                p.baseDelay(), p.maxDelay(), p.maxCircuitWait()));
+                    }
+                    case "--limit" -> {
+                        BandwidthLimiter.Limits l = settings.bandwidthLimits();
+                        settings = settings.withBandwidthLimits(new BandwidthLimiter.Limits(
+                                rateValue(args, ++i, arg), l.perHostBytesPerSecond(), l.perJobBytesPerSecond()));
+                    }
+                    case "--limit-host" -> {
+                        BandwidthLimiter.Limits l = settings.bandwidthLimits();
+                        settings = settings.withBandwidthLimits(new BandwidthLimiter.Limits(
+                                l.globalBytesPerSecond(), rateValue(args, ++i, arg), l.perJobBytesPerSecond()));
+                    }
+                    case "--limit-job" -> {
+                        BandwidthLimiter.Limits l = settings.bandwidthLimits();
+                        settings = settings.withBandwidthLimits(new BandwidthLimiter.Limits(
+                                l.globalBytesPerSecond(), l.perHostBytesPerSecond(), rateValue(args, ++i, arg)));
+                    }
+                    case "--keep-ts" -> settings = settings.withRemuxHls(false);
+                    case "--no-cache" -> settings = settings.withExtractionCache(null, Duration.ZERO);
+                    case "--warm-browser" -> settings = settings.withBrowserWarmUp(countValue(args, ++i, arg));
+                    case "-v", "--verbose" -> logLevel = LogLevel.DEBUG;
+                    case "-q", "--quiet" -> quiet = true;
+                    case "-h", "--help" -> {
+                        out.print(usage());
+                        return 0;
+                    }
+                    default -> {
+                        if (arg.startsWith("-") && !arg.equals("-")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        urls.add(arg);
+                    }
+                }
+            }
+            if (urls.isEmpty() || urls.equals(List.of("-"))) {
+                urls = readLines();
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(e.getMessage());
+            err.print(usage());
+            return 2;
+        }
+
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            err.println("Cannot create output folder: " + folder);
+            return 2;
+        }
+
+        Log log = quiet ? Log.NONE : Log.to(err, logLevel);
+        try (ClipHarborEngine engine = new ClipHarborEngine(settings, log)) {
+            engine.scheduler().addListener(job -> {
+                synchronized (out) {
+                    out.println(toJson(job));
+                    out.flush();
+                }
+            });
+            engine.scheduler().submit(urls, folder);
+            engine.scheduler().awaitIdle();
+
+            Map<JobState, Integer> counts = engine.scheduler().counts();
+            out.println("{\"event\":\"summary\",\"done\":" + counts.get(JobState.DONE)
+                    + ",\"failed\":" + counts.get(JobState.FAILED) + "}");
+            return counts.get(JobState.FAILED) == 0 ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+    }
+
+    static String toJson(DownloadJob job) {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"event\":\"job\",\"id\":").append(job.id());
+        sb.append(",\"state\":\"").append(job.state()).append('"');
+        sb.append(",\"url\":");
+        appendString(sb, job.url());
+        sb.append(",\"output\":");
+        if (job.outputFile() != null) {
+            appendString(sb, job.outputFile().getPath());
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"message\":");
+        appendString(sb, job.message());
+        if (job.state().isFinished()) {
+            sb.append(",\"stats\":").append(job.progress().snapshot().toJson());
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static List<String> readLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isBlank()) lines.add(line.trim());
+        }
+        return lines;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+        return args[i];
+    }
+
+    private static int intValue(String[] args, int i, String option) {
+        String v = value(args, i, option);
+        try {
+            int n = Integer.parseInt(v);
+            if (n < 1) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a positive number, got: " + v);
+        }
+    }
+
+    private static int countValue(String[] args, int i, String option) {
+        String v = value(args, i, option);
+        try {
+            int n = Integer.parseInt(v);
+            if (n < 0) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number of 0 or more, got: " + v);
+        }
+    }
+
+    private static long rateValue(String[] args, int i, String option) {
+        String v = value(args, i, option);
+        try {
+            return BandwidthLimiter.parseRate(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a rate such as 500k or 2M, got: " + v);
+        }
+    }
+
+    private static String usage() {
+        EngineSettings d = EngineSettings.DEFAULTS;
+        return String.format(USAGE, d.maxRunningJobs(), d.maxJobsPerHost(), d.fileConnections(), d.hlsConcurrency(),
+                d.retryPolicy().maxAttempts(), d.browserWarmUp());
+    }
+}
@@ -0,0 +1,235 @@
+package org.ts.clipharbor.download;
+
+import org.ts.clipharbor.net.Throttle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Moves response bodies into a {@link FileChannel}. Reads are gathered into large reusable
+ * buffers so each write hands the kernel a full buffer instead of one network read's worth.
+ * {@code FileChannel.transferFrom} is not used here: for a non-file source it stages through
+ * a small internal buffer and loses the batching.
+ *
+ * <p>With {@link TransferOptions#writeBehindBuffers()} above zero, full buffers are handed to
+ * this transfer's own disk writer threads and the network is read on while they are written, so a
+ * slow disk no longer stalls the socket, and one job's disk never holds up another's. Every write
+ * goes to an explicit file position, so batches land in place whichever thread writes them. A
+ * {@link Throttle} paces the reads to a bandwidth limit.
+ */
+public class ChannelTransfer {
+
+    private final TransferOptions options;
+    private final TransferStats stats;
+    private final TransferProgress progress;
+    private final Throttle throttle;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong unsyncedBytes = new AtomicLong();
+    private ThreadPoolExecutor writer;
+
+    public ChannelTransfer(TransferOptions options, TransferStats stats) {
+        this(options, stats, new TransferProgress());
+    }
+
+    /** Reports every byte written to {@code progress} as well. */
+    public ChannelTransfer(TransferOptions options, TransferStats stats, TransferProgress progress) {
+        this(options, stats, progress, Throttle.NONE);
+    }
+
+    /** Also holds reads to the rate of {@code throttle}. */
+    public ChannelTransfer(TransferOptions options, TransferStats stats, TransferProgress progress, Throttle throttle) {
+        this.options = options;
+        this.stats = stats;
+        this.progress = progress;
+        this.throttle = throttle;
+    }
+
+    public TransferStats stats() {
+        return stats;
+    }
+
+    /** Copies {@code in} to {@code out} starting at {@code position}; returns the number of bytes copied. */
+    public long copy(InputStream in, FileChannel out, long position) throws IOException {
+        return copy(in, out, position, true, n -> {});
+    }
+
+    /**
+     * Like {@link #copy(InputStream, FileChannel, long)}, also reporting each batch to {@code written}
+     * once it is in the file, so a caller whose stream breaks knows where to resume.
+     */
+    public long copy(InputStream in, FileChannel out, long position, LongConsumer written) throws IOException {
+        return copy(in, out, position, true, written);
+    }
+
+    /** Copies {@code in} to the current position of {@code out}; returns the number of bytes copied. */
+    public long append(InputStream in, FileChannel out) throws IOException {
+        return copy(in, out, out.position(), false, n -> {});
+    }
+
+    /** Writes all of {@code src} at the current position of {@code out}. */
+    public void write(ByteBuffer src, FileChannel out) throws IOException {
+        while (src.hasRemaining()) {
+            stats.recordWrite(out.write(src));
+        }
+        progress.addBytes(src.limit());
+        maybeSync(out, src.limit());
+    }
+
+    /** Applies the end-of-transfer sync policy. */
+    public void finish(FileChannel out) throws IOException {
+        if (options.syncOnClose() || options.syncEveryBytes() > 0) {
+            out.force(false);
+            stats.recordSync();
+        }
+    }
+
+    private long copy(InputStream in, FileChannel out, long position, boolean positional, LongConsumer onBatch)
+            throws IOException {
+        ReadableByteChannel src = Channels.newChannel(in);
+        ArrayDeque<PendingWrite> pending = new ArrayDeque<>();
+        long start = position;
+        boolean completed = false;
+        try {
+            boolean eof = false;
+            while (!eof) {
+                ByteBuffer buf = borrow();
+                try {
+                    eof = fill(src, buf);
+                } catch (IOException | RuntimeException e) {
+                    buffers.offer(buf);
+                    throw e;
+                }
+                buf.flip();
+                int batch = buf.remaining();
+                long at = position;
+                position += batch;
+                if (options.writeBehindBuffers() == 0) {
+                    try {
+                        drain(buf, out, at);
+                    } finally {
+                        buffers.offer(buf);
+                    }
+                    written(batch, onBatch);
+                } else {
+                    pending.add(new PendingWrite(writer().submit(() -> drain(buf, out, at)), buf, batch));
+                    while (pending.size() > options.writeBehindBuffers()) await(pending.poll(), onBatch);
+                }
+            }
+            while (!pending.isEmpty()) await(pending.poll(), onBatch);
+            if (!positional) out.position(position);
+            completed = true;
+        } finally {
+            if (!completed) abandon(pending);
+        }
+        return position - start;
+    }
+
+    // Reads until the buffer is full or the stream ends; returns whether it ended.
+    private boolean fill(ReadableByteChannel src, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = src.read(buf);
+            stats.recordRead();
+            if (n < 0) return true;
+            throttle.acquire(n);
+        }
+        return false;
+    }
+
+    private Void drain(ByteBuffer buf, FileChannel out, long position) throws IOException {
+        int batch = buf.remaining();
+        while (buf.hasRemaining()) {
+            int written = out.write(buf, position);
+            stats.recordWrite(written);
+            position += written;
+        }
+        maybeSync(out, batch);
+        return null;
+    }
+
+    private void written(int batch, LongConsumer onBatch) {
+        progress.addBytes(batch);
+        onBatch.accept(batch);
+    }
+
+    // Batches are reported in order, and only once they are in the file.
+    private void await(PendingWrite write, LongConsumer onBatch) throws IOException {
+        try {
+            write.future().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Write failed", e.getCause());
+        } finally {
+            buffers.offer(write.buf());
+        }
+        written(write.batch(), onBatch);
+    }
+
+    // After a failure the queued writes still run; wait for them so nothing reaches the file once
+    // the caller has moved on, and leave them unreported so a retry fetches those bytes again.
+    private void abandon(ArrayDeque<PendingWrite> pending) {
+        boolean interrupted = false;
+        for (PendingWrite write : pending) {
+            while (true) {
+                try {
+                    write.future().get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            buffers.offer(write.buf());
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void maybeSync(FileChannel out, long written) throws IOException {
+        long every = options.syncEveryBytes();
+        if (every > 0 && unsyncedBytes.addAndGet(written) >= every) {
+            unsyncedBytes.set(0);
+            out.force(false);
+            stats.recordSync();
+        }
+    }
+
+    private ByteBuffer borrow() {
+        ByteBuffer buf = buffers.poll();
+        return buf != null ? buf.clear() : options.allocate();
+    }
+
+    private record PendingWrite(Future<Void> future, ByteBuffer buf, int batch) {
+    }
+
+    // Idle writer threads time out, so a finished transfer leaves nothing running.
+    private synchronized ThreadPoolExecutor writer() {
+        if (writer == null) {
+            int threads = options.writerThreads();
+            writer = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "disk-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            writer.allowCoreThreadTimeOut(true);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,84 @@
+package org.ts.clipharbor.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Checks before a download starts that what it is expected to write fits on the disk, so a job
+ * fails at once instead of after filling the disk. Space promised to downloads still running on the
+ * same file store counts as taken, which keeps several jobs started together from each counting on
+ * the same free space; a promise shrinks as its download writes.
+ */
+public final class DiskSpace {
+
+    /** Left free on top of what downloads need, for the journal, remux state and everything else. */
+    public static final long HEADROOM_BYTES = 64L * 1024 * 1024;
+
+    private static final Map<FileStore, List<Reservation>> reservations = new HashMap<>();
+
+    private DiskSpace() {
+    }
+
+    /**
+     * Promises {@code bytes} on the disk holding {@code folder}, of which {@code written} reports how
+     * many have been written so far; close the reservation when the download ends. A resumed download
+     * asks only for what it still has to write, and {@code written} counts from there. Throws when the
+     * disk does not have the room, and returns an empty reservation when {@code bytes} is not positive.
+     */
+    public static Reservation reserve(File folder, long bytes, LongSupplier written) throws IOException {
+        if (bytes <= 0) return new Reservation(null, 0, written);
+        File dir = folder.getAbsoluteFile();
+        while (dir != null && !dir.exists()) dir = dir.getParentFile();
+        if (dir == null) return new Reservation(null, 0, written);
+        FileStore store = Files.getFileStore(dir.toPath());
+        synchronized (reservations) {
+            List<Reservation> held = reservations.computeIfAbsent(store, s -> new ArrayList<>());
+            long promised = 0;
+            for (Reservation r : held) promised += r.remaining();
+            long free = store.getUsableSpace() - promised - HEADROOM_BYTES;
+            if (bytes > free) {
+                throw new IOException(String.format(Locale.ROOT, "Not enough disk space in %s: need %.1f MB, %.1f MB free",
+                        folder, bytes / (1024.0 * 1024.0), Math.max(0, free) / (1024.0 * 1024.0)));
+            }
+            Reservation reservation = new Reservation(store, bytes, written);
+            held.add(reservation);
+            return reservation;
+        }
+    }
+
+    /** Space promised to one download; closing it releases what was not written yet. */
+    public static final class Reservation implements AutoCloseable {
+
+        private final FileStore store;
+        private final long bytes;
+        private final LongSupplier written;
+
+        private Reservation(FileStore store, long bytes, LongSupplier written) {
+            this.store = store;
+            this.bytes = bytes;
+            this.written = written;
+        }
+
+        /** Bytes promised but not yet written. */
+        public long remaining() {
+            return Math.max(0, bytes - written.getAsLong());
+        }
+
+        @Override
+        public void close() {
+            if (store == null) return;
+            synchronized (reservations) {
+                List<Reservation> held = reservations.get(store);
+                if (held != null && held.remove(this) && held.isEmpty()) reservations.remove(store);
+            }
+        }
+    }
+}
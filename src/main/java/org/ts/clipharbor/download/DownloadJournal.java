@@ -0,0 +1,128 @@
+package org.ts.clipharbor.download;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Sidecar file recording how much of a download has already reached the disk, so an interrupted
+ * transfer can be resumed instead of restarted. The journal lives next to the output as
+ * {@code <name>.journal} and is removed once the download completes.
+ */
+public class DownloadJournal {
+
+    public static final String SUFFIX = ".journal";
+
+    private static final long SAVE_INTERVAL_MS = 1_000;
+
+    private final File file;
+    private final Properties props = new Properties();
+    private long lastSave;
+
+    private DownloadJournal(File file) {
+        this.file = file;
+    }
+
+    public static DownloadJournal open(File outputFile) {
+        DownloadJournal journal = new DownloadJournal(new File(outputFile.getPath() + SUFFIX));
+        if (journal.file.isFile()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(journal.file), "UTF-8")) {
+                journal.props.load(reader);
+            } catch (IOException e) {
+                journal.props.clear();
+            }
+        }
+        return journal;
+    }
+
+    /** The stream an output was claimed for by {@link #claim}; {@code null} when not recorded. */
+    public static String originOf(File outputFile) {
+        return open(outputFile).props.getProperty("origin");
+    }
+
+    /**
+     * Marks an output as belonging to the given stream before anything is written, so a partial
+     * file is only ever resumed by the stream it came from. The mark survives {@link #reset}.
+     */
+    public static void claim(File outputFile, String origin) throws IOException {
+        DownloadJournal journal = open(outputFile);
+        journal.props.setProperty("origin", origin);
+        journal.save();
+    }
+
+    /**
+     * Binds the journal to a transfer. Returns {@code true} when the existing entries were recorded
+     * for the same kind, source, validators and length and can be resumed; otherwise the journal is
+     * cleared and {@code false} is returned.
+     */
+    public synchronized boolean begin(String kind, String source, String etag, String lastModified, long length) {
+        boolean resumable = Objects.equals(kind, props.getProperty("kind"))
+                && Objects.equals(source, props.getProperty("source"))
+                && Objects.equals(etag, props.getProperty("etag"))
+                && Objects.equals(lastModified, props.getProperty("lastModified"))
+                && Objects.equals(String.valueOf(length), props.getProperty("length"));
+        if (!resumable) reset(kind, source, etag, lastModified, length);
+        return resumable;
+    }
+
+    /** Discards all recorded progress and binds the journal to the given transfer. */
+    public synchronized void reset(String kind, String source, String etag, String lastModified, long length) {
+        String origin = props.getProperty("origin");
+        props.clear();
+        if (origin != null) props.setProperty("origin", origin);
+        props.setProperty("kind", kind);
+        props.setProperty("source", source);
+        if (etag != null) props.setProperty("etag", etag);
+        if (lastModified != null) props.setProperty("lastModified", lastModified);
+        props.setProperty("length", String.valueOf(length));
+    }
+
+    public synchronized boolean isRangeDone(long start, long end) {
+        return String.valueOf(end).equals(props.getProperty("range." + start));
+    }
+
+    public synchronized void markRangeDone(long start, long end) {
+        props.setProperty("range." + start, String.valueOf(end));
+    }
+
+    public synchronized int segmentsDone() {
+        return Integer.parseInt(props.getProperty("segments", "0"));
+    }
+
+    public synchronized long bytesDone() {
+        return Long.parseLong(props.getProperty("bytes", "0"));
+    }
+
+    public synchronized void markSegmentsDone(int segments, long bytes) {
+        props.setProperty("segments", String.valueOf(segments));
+        props.setProperty("bytes", String.valueOf(bytes));
+    }
+
+    /** Extra state a downloader keeps alongside its progress; {@code null} when not recorded. */
+    public synchronized String attribute(String name) {
+        return props.getProperty("attr." + name);
+    }
+
+    public synchronized void setAttribute(String name, String value) {
+        props.setProperty("attr." + name, value);
+    }
+
+    public synchronized void saveIfDue() throws IOException {
+        if (System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MS) save();
+    }
+
+    public synchronized void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8")) {
+            props.store(writer, "ClipHarbor download journal");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSave = System.currentTimeMillis();
+    }
+
+    public synchronized void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,268 @@
+package org.ts.clipharbor.download;
+
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.RangeNotSatisfiedException;
+import org.ts.clipharbor.net.Throttle;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads a single file. When the server advertises byte ranges and the file is large enough,
+ * the file is split into chunks that are fetched in parallel and written at their offsets into a
+ * preallocated output; otherwise, or if any chunk comes back without a partial response, the
+ * whole file is streamed over one connection. A chunk or stream that breaks is retried on its own
+ * from the last byte written, under the {@link org.ts.clipharbor.net.RetryPolicy} of the
+ * {@link HttpService}. Progress is recorded in a {@link DownloadJournal}
+ * so that a later call for the same output resumes where the previous one stopped. When the size
+ * is known, the space still missing on disk is reserved through {@link DiskSpace} before any
+ * byte is fetched, and all connections of the file share one {@link Throttle}.
+ */
+public class FileDownloader {
+
+    public static final int DEFAULT_CONNECTIONS = 4;
+    public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    private static final long WORKER_STOP_SECONDS = 10;
+
+    private final HttpService http;
+    private final int connections;
+    private final long chunkSize;
+    private final TransferOptions transferOptions;
+    private final Throttle throttle;
+    private final Log log;
+
+    public FileDownloader(HttpService http, int connections, long chunkSize, TransferOptions transferOptions,
+                          Throttle throttle, Log log) {
+        if (connections < 1) throw new IllegalArgumentException("connections must be >= 1");
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be >= 1");
+        this.http = http;
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+        this.transferOptions = transferOptions;
+        this.throttle = throttle;
+        this.log = log;
+    }
+
+    public TransferStats download(String fileUrl, File outputFile) throws IOException {
+        return download(fileUrl, outputFile, new TransferProgress());
+    }
+
+    public TransferStats download(String fileUrl, File outputFile, TransferProgress progress) throws IOException {
+        DownloadJournal journal = DownloadJournal.open(outputFile);
+        ChannelTransfer transfer = new ChannelTransfer(transferOptions, new TransferStats(), progress, throttle);
+        RemoteFile remote = probe(fileUrl);
+        long onDisk = outputFile.isFile() ? Math.min(outputFile.length(), remote.length) : 0;
+        boolean done = false;
+        try (DiskSpace.Reservation ignored = DiskSpace.reserve(outputFile.getAbsoluteFile().getParentFile(),
+                remote.length - onDisk, transfer.stats()::bytes)) {
+            if (connections > 1 && remote.acceptsRanges && remote.length > chunkSize) {
+                try {
+                    downloadRanged(remote, outputFile, journal, transfer, progress);
+                    done = true;
+                } catch (RangeNotSatisfiedException e) {
+                    log.info(e.getMessage() + ", falling back to single stream");
+                }
+            } else {
+                log.debug(() -> "Ranged download not used (length: " + remote.length + ")");
+            }
+            if (!done) downloadSingle(remote, outputFile, journal, transfer, progress);
+        } finally {
+            progress.finish();
+        }
+        journal.delete();
+
+        TransferStats stats = transfer.stats();
+        stats.finish();
+        log.debug(() -> "Transfer: " + stats.summary());
+        return stats;
+    }
+
+    private RemoteFile probe(String fileUrl) throws IOException {
+        try {
+            HttpResponse<Void> response = http.head(fileUrl);
+            HttpHeaders headers = response.headers();
+            long length = headers.firstValueAsLong("Content-Length").orElse(-1);
+            boolean acceptsBytes = headers.firstValue("Accept-Ranges").map("bytes"::equalsIgnoreCase).orElse(false);
+            log.debug(() -> "Probe " + response.statusCode() + ": length=" + length + ", accept-ranges=" + acceptsBytes);
+            if (response.statusCode() == 200) {
+                return new RemoteFile(response.uri(), length, acceptsBytes && length > 0,
+                        headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            if (e instanceof InterruptedIOException) throw (InterruptedIOException) e;
+            log.debug(() -> "Probe failed: " + e.getMessage());
+        }
+        return new RemoteFile(URI.create(fileUrl), -1, false, null, null);
+    }
+
+    private void downloadRanged(RemoteFile remote, File outputFile, DownloadJournal journal,
+                                ChannelTransfer transfer, TransferProgress progress) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        for (long start = 0; start < remote.length; start += chunkSize) {
+            chunks.add(new long[]{start, Math.min(start + chunkSize, remote.length) - 1});
+        }
+
+        boolean resuming = remote.hasValidator()
+                && journal.begin("range", remote.uri.toString(), remote.etag, remote.lastModified, remote.length)
+                && outputFile.length() == remote.length;
+        if (!resuming) {
+            journal.reset("range", remote.uri.toString(), remote.etag, remote.lastModified, remote.length);
+            try (RandomAccessFile raf = new RandomAccessFile(outputFile, "rw")) {
+                raf.setLength(remote.length);
+            }
+        }
+        List<long[]> pending = new ArrayList<>();
+        long bytesAlreadyDone = 0;
+        for (long[] chunk : chunks) {
+            if (!resuming || !journal.isRangeDone(chunk[0], chunk[1])) {
+                pending.add(chunk);
+            } else {
+                bytesAlreadyDone += chunk[1] - chunk[0] + 1;
+            }
+        }
+        progress.start(remote.length, chunks.size(), bytesAlreadyDone, chunks.size() - pending.size());
+        log.debug(() -> "Ranged download: " + pending.size() + "/" + chunks.size()
+                + " chunks over " + connections + " connections" + (resuming ? " (resumed)" : ""));
+        if (pending.isEmpty()) return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(connections, pending.size()), daemonThreads());
+        try (FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<?>> futures = new ArrayList<>();
+            try {
+                for (long[] chunk : pending) {
+                    futures.add(pool.submit(() -> {
+                        long start = System.nanoTime();
+                        fetchRange(remote.uri, chunk[0], chunk[1], channel, transfer);
+                        progress.recordLatency(System.nanoTime() - start);
+                        progress.segmentDone();
+                        journal.markRangeDone(chunk[0], chunk[1]);
+                        if (remote.hasValidator()) journal.save();
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    await(future);
+                }
+                transfer.finish(channel);
+            } finally {
+                stop(pool, futures);
+            }
+        }
+    }
+
+    // The workers are stopped while the channel is still open, so none of them sees it closed
+    // and retries into a file the caller has already given up on.
+    private void stop(ExecutorService pool, List<Future<?>> futures) {
+        for (Future<?> future : futures) future.cancel(true);
+        pool.shutdownNow();
+        try {
+            if (!pool.awaitTermination(WORKER_STOP_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Range workers still running " + WORKER_STOP_SECONDS + " s after being stopped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A retry asks only for the part of the chunk that has not reached the file yet.
+    private void fetchRange(URI uri, long start, long end, FileChannel channel, ChannelTransfer transfer) throws IOException {
+        long[] position = {start};
+        http.retrier().call(uri, attempt -> {
+            HttpRequest request = http.request(uri).header("Range", "bytes=" + position[0] + "-" + end).build();
+            HttpResponse<InputStream> response = http.sendRangeOnce(request, HttpResponse.BodyHandlers.ofInputStream(),
+                    attempt);
+            try (InputStream in = response.body()) {
+                transfer.copy(in, channel, position[0], n -> position[0] += n);
+            }
+            if (position[0] != end + 1) {
+                throw new IOException("Range " + start + "-" + end + " ended early at byte " + position[0]);
+            }
+            return null;
+        });
+    }
+
+    // Each retry resumes from what is on disk when the server allows it, otherwise starts over.
+    private void downloadSingle(RemoteFile remote, File outputFile, DownloadJournal journal,
+                                ChannelTransfer transfer, TransferProgress progress) throws IOException {
+        http.retrier().call(remote.uri, attempt -> {
+            streamSingle(remote, outputFile, journal, transfer, progress, attempt);
+            return null;
+        });
+    }
+
+    private void streamSingle(RemoteFile remote, File outputFile, DownloadJournal journal,
+                              ChannelTransfer transfer, TransferProgress progress, int attempt) throws IOException {
+        boolean resumable = remote.acceptsRanges && remote.hasValidator()
+                && journal.begin("single", remote.uri.toString(), remote.etag, remote.lastModified, remote.length)
+                && outputFile.length() > 0 && outputFile.length() < remote.length;
+        if (!resumable) {
+            journal.reset("single", remote.uri.toString(), remote.etag, remote.lastModified, remote.length);
+        }
+        if (remote.hasValidator()) journal.save();
+
+        HttpRequest.Builder request = http.request(remote.uri);
+        long offset = resumable ? outputFile.length() : 0;
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-");
+            request.header("If-Range", remote.etag != null ? remote.etag : remote.lastModified);
+        }
+        HttpResponse<InputStream> response = http.sendOnce(request.build(), HttpResponse.BodyHandlers.ofInputStream(), attempt);
+        HttpService.requireSuccess(response);
+
+        boolean append = offset > 0 && response.statusCode() == 206;
+        if (append) {
+            log.info("Resuming at byte " + offset);
+        } else if (offset > 0) {
+            log.warn("Server ignored resume request, restarting");
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        progress.start(length < 0 ? remote.length : (append ? offset : 0) + length, -1, append ? offset : 0, 0);
+        try (InputStream in = response.body();
+             FileChannel out = FileChannel.open(outputFile.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(append ? offset : 0);
+            out.position(append ? offset : 0);
+            transfer.append(in, out);
+            transfer.finish(out);
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during ranged download");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Ranged download failed", cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "range-fetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private record RemoteFile(URI uri, long length, boolean acceptsRanges, String etag, String lastModified) {
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+    }
+}
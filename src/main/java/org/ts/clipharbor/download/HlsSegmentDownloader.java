@@ -0,0 +1,408 @@
+package org.ts.clipharbor.download;
+
+import org.ts.clipharbor.hls.HlsMap;
+import org.ts.clipharbor.hls.HlsSegment;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.log.LogLevel;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Throttle;
+import org.ts.clipharbor.remux.TsRemuxer;
+
+import java.io.*;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Fetches HLS segments concurrently and appends them to the output in playlist order.
+ * Completed segments that are ahead of the write position wait in a reorder buffer whose
+ * size is capped by {@code maxBufferedBytes}. A fetch counts against the cap from the moment it
+ * is started, at the average size of the segments seen so far, so once the cap is hit no new
+ * fetches are started until the head of the playlist has been written. Written segments are recorded in a
+ * {@link DownloadJournal} so an interrupted download picks up after the last complete segment. A
+ * segment that still fails after its retries is fetched from a redundant stream when there is one.
+ *
+ * <p>AES-128 segments are decrypted as they arrive. Fragmented MP4 streams are written as their
+ * {@code #EXT-X-MAP} init section followed by the segments. Transport stream segments are remuxed
+ * into a fragmented MP4 on the way to disk when {@code remuxToMp4} is set and the first segment
+ * holds only H.264 and AAC; otherwise they are concatenated into a {@code .ts} file. A later segment
+ * that cannot be remuxed restarts the download as {@code .ts}. Segment bodies
+ * are read under a {@link Throttle} shared by all workers.
+ */
+public class HlsSegmentDownloader {
+
+    public static final int DEFAULT_CONCURRENCY = 6;
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+    // How many segments may be scheduled per worker before the head is written.
+    private static final int LOOKAHEAD_PER_WORKER = 4;
+
+    private enum Container {
+        TS(".ts", "hls"), REMUXED_MP4(".mp4", "hls-mp4"), FRAGMENTED_MP4(".mp4", "hls-fmp4");
+
+        final String extension;
+        final String journalKind;
+
+        Container(String extension, String journalKind) {
+            this.extension = extension;
+            this.journalKind = journalKind;
+        }
+    }
+
+    private final HttpService http;
+    private final int concurrency;
+    private final long maxBufferedBytes;
+    private final TransferOptions transferOptions;
+    private final boolean remuxToMp4;
+    private final Throttle throttle;
+    private final Log log;
+
+    public HlsSegmentDownloader(HttpService http, int concurrency, long maxBufferedBytes, TransferOptions transferOptions,
+                                boolean remuxToMp4, Throttle throttle, Log log) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be >= 1");
+        if (maxBufferedBytes < 1) throw new IllegalArgumentException("maxBufferedBytes must be >= 1");
+        this.http = http;
+        this.concurrency = concurrency;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.transferOptions = transferOptions;
+        this.remuxToMp4 = remuxToMp4;
+        this.throttle = throttle;
+        this.log = log;
+    }
+
+    /**
+     * Downloads {@code segments} into the file {@code outputFor} returns for the chosen extension,
+     * {@code .mp4} or {@code .ts}. Each list in {@code mirrors} holds the same segments from a
+     * redundant stream and is tried in turn when a segment keeps failing.
+     */
+    public TransferStats download(List<HlsSegment> segments, List<List<HlsSegment>> mirrors,
+                                  Function<String, File> outputFor, TransferProgress progress) throws IOException {
+        return download(segments, mirrors, -1, outputFor, progress);
+    }
+
+    /**
+     * Like {@link #download(List, List, Function, TransferProgress)}, first reserving through
+     * {@link DiskSpace} the part of {@code expectedBytes} that a resumed download still has to write;
+     * {@code -1} when the size is unknown.
+     */
+    public TransferStats download(List<HlsSegment> segments, List<List<HlsSegment>> mirrors, long expectedBytes,
+                                  Function<String, File> outputFor, TransferProgress progress) throws IOException {
+        if (segments.isEmpty()) throw new IOException("Playlist has no segments");
+        SegmentDecryptor decryptor = new SegmentDecryptor(http);
+        AtomicInteger activeSource = new AtomicInteger();
+        Container container = segments.get(0).map() != null ? Container.FRAGMENTED_MP4
+                : remuxToMp4 ? Container.REMUXED_MP4 : Container.TS;
+        try {
+            return download(container, segments, mirrors, expectedBytes, outputFor, progress, decryptor, activeSource);
+        } catch (CannotRemuxException e) {
+            log.warn("Segment " + e.segment + " cannot be remuxed (" + e.getCause().getMessage()
+                    + "), downloading as MPEG-TS instead");
+            Files.deleteIfExists(e.outputFile.toPath());
+            DownloadJournal.open(e.outputFile).delete();
+            return download(Container.TS, segments, mirrors, expectedBytes, outputFor, progress, decryptor,
+                    activeSource);
+        }
+    }
+
+    private TransferStats download(Container container, List<HlsSegment> segments, List<List<HlsSegment>> mirrors,
+                                   long expectedBytes, Function<String, File> outputFor, TransferProgress progress,
+                                   SegmentDecryptor decryptor, AtomicInteger activeSource) throws IOException {
+        int total = segments.size();
+        String fingerprint = fingerprint(segments);
+        HlsMap map = segments.get(0).map();
+
+        // Whether a TS stream can be remuxed is first judged from its first segment, which is then kept
+        // along with its remuxed output.
+        File outputFile = outputFor.apply(container.extension);
+        DownloadJournal journal = DownloadJournal.open(outputFile);
+        TsRemuxer remuxer = null;
+        byte[] firstSegment = null;
+        byte[] firstOutput = null;
+        int firstIndex = 0;
+        long firstLatency = 0;
+        if (container == Container.REMUXED_MP4) {
+            if (resume(journal, container, fingerprint, total, outputFile) && journal.segmentsDone() < total) {
+                firstIndex = journal.segmentsDone();
+                long start = System.nanoTime();
+                firstSegment = fetchSegment(firstIndex, segments, mirrors, activeSource, decryptor);
+                firstLatency = System.nanoTime() - start;
+                // The remuxer's timeline is saved with each segment so a resumed download continues it.
+                // The tracks are rebuilt from the segment resumed at, so when that segment lacks the
+                // parameter sets the MP4 is started over from the first segment instead.
+                String state = journal.attribute("remux");
+                try {
+                    if (state == null) throw new IOException("no remuxer state recorded");
+                    remuxer = TsRemuxer.fromState(state);
+                    firstOutput = remuxer.remux(firstSegment);
+                } catch (IllegalArgumentException | IOException e) {
+                    log.info("Restarting the MP4 remux from the first segment: " + e.getMessage());
+                    remuxer = null;
+                    journal.reset(container.journalKind, fingerprint, null, null, total);
+                }
+            }
+            if (remuxer == null) {
+                long start = System.nanoTime();
+                firstIndex = 0;
+                firstSegment = fetchSegment(0, segments, mirrors, activeSource, decryptor);
+                firstLatency = System.nanoTime() - start;
+                try {
+                    remuxer = new TsRemuxer();
+                    firstOutput = remuxer.remux(firstSegment);
+                } catch (IOException e) {
+                    log.info("Keeping MPEG-TS, cannot remux to MP4: " + e.getMessage());
+                    remuxer = null;
+                    container = Container.TS;
+                    outputFile = outputFor.apply(container.extension);
+                    journal = DownloadJournal.open(outputFile);
+                }
+            }
+        }
+
+        int written = 0;
+        long bytesWritten = 0;
+        if (resume(journal, container, fingerprint, total, outputFile)) {
+            written = journal.segmentsDone();
+            bytesWritten = journal.bytesDone();
+            log.info("Resuming HLS download at segment " + (written + 1) + "/" + total);
+        }
+        if (written == 0) journal.reset(container.journalKind, fingerprint, null, null, total);
+        if (firstIndex != written) {
+            firstSegment = null;
+            firstOutput = null;
+        }
+
+        progress.start(-1, total, bytesWritten, written);
+
+        ChannelTransfer transfer = new ChannelTransfer(transferOptions, new TransferStats(), progress);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency, daemonThreads());
+        Deque<Future<byte[]>> window = new ArrayDeque<>();
+        AtomicLong buffered = new AtomicLong();
+        AtomicLong fetchedBytes = new AtomicLong();
+        AtomicInteger fetchedSegments = new AtomicInteger();
+        int maxWindow = concurrency * LOOKAHEAD_PER_WORKER;
+        int next = written;
+        if (firstSegment != null) {
+            progress.recordLatency(firstLatency);
+            buffered.addAndGet(firstSegment.length);
+            fetchedBytes.addAndGet(firstSegment.length);
+            fetchedSegments.incrementAndGet();
+            window.add(CompletableFuture.completedFuture(firstSegment));
+            next++;
+        }
+
+        try (DiskSpace.Reservation ignored = DiskSpace.reserve(outputFile.getAbsoluteFile().getParentFile(),
+                expectedBytes - bytesWritten, transfer.stats()::bytes);
+             FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(bytesWritten);
+            out.position(bytesWritten);
+            if (container == Container.FRAGMENTED_MP4 && written == 0) {
+                byte[] init = fetchInitSection(map, segments.get(0), decryptor);
+                transfer.write(ByteBuffer.wrap(init), out);
+                bytesWritten += init.length;
+                warnOnInitSwitch(segments);
+            }
+            if (remuxer != null) log.info("Remuxing HLS segments into " + outputFile.getName());
+            while (written < total) {
+                while (next < total && window.size() < maxWindow) {
+                    long expected = expectedSize(fetchedBytes.get(), fetchedSegments.get());
+                    if (!window.isEmpty() && buffered.get() + expected > maxBufferedBytes) break;
+                    int index = next++;
+                    buffered.addAndGet(expected);
+                    window.add(pool.submit(() -> {
+                        long start = System.nanoTime();
+                        byte[] data = fetchSegment(index, segments, mirrors, activeSource, decryptor);
+                        progress.recordLatency(System.nanoTime() - start);
+                        fetchedBytes.addAndGet(data.length);
+                        fetchedSegments.incrementAndGet();
+                        buffered.addAndGet(data.length - expected);
+                        return data;
+                    }));
+                }
+
+                byte[] data = await(window.poll(), segments.get(written).uri());
+                byte[] output = data;
+                if (firstOutput != null) {
+                    output = firstOutput;
+                    firstOutput = null;
+                } else if (remuxer != null) {
+                    output = remux(remuxer, data, written + 1, outputFile);
+                }
+                transfer.write(ByteBuffer.wrap(output), out);
+                buffered.addAndGet(-data.length);
+                written++;
+                bytesWritten += output.length;
+                progress.segmentDone();
+                journal.markSegmentsDone(written, bytesWritten);
+                if (remuxer != null) journal.setAttribute("remux", remuxer.state());
+                journal.saveIfDue();
+                if (log.isEnabled(LogLevel.DEBUG)) {
+                    log.write(LogLevel.DEBUG, "Wrote segment " + written + "/" + total
+                            + " (in flight: " + window.size() + ", buffered: " + buffered.get() / 1024 + " KB)");
+                }
+            }
+            transfer.finish(out);
+        } finally {
+            pool.shutdownNow();
+            progress.finish();
+            if (written < total) saveQuietly(journal);
+        }
+        journal.delete();
+        if (remuxer != null && log.isEnabled(LogLevel.DEBUG)) {
+            log.write(LogLevel.DEBUG, "Remuxed stream codecs: " + remuxer.codecs());
+        }
+
+        TransferStats stats = transfer.stats();
+        stats.finish();
+        log.debug(() -> "Transfer: " + stats.summary());
+        return stats;
+    }
+
+    // Until a segment has arrived each fetch is assumed to take an even share of the buffer.
+    private long expectedSize(long fetchedBytes, int fetchedSegments) {
+        return fetchedSegments == 0 ? maxBufferedBytes / concurrency : fetchedBytes / fetchedSegments;
+    }
+
+    private static boolean resume(DownloadJournal journal, Container container, String fingerprint, int total,
+                                  File outputFile) {
+        return journal.begin(container.journalKind, fingerprint, null, null, total)
+                && journal.segmentsDone() > 0
+                && outputFile.length() >= journal.bytesDone();
+    }
+
+    // A segment the first one did not predict, such as a codec switch, sends the whole download back as TS.
+    private static byte[] remux(TsRemuxer remuxer, byte[] segment, int number, File outputFile)
+            throws CannotRemuxException {
+        try {
+            return remuxer.remux(segment);
+        } catch (IOException e) {
+            throw new CannotRemuxException(number, outputFile, e);
+        }
+    }
+
+    /**
+     * Fetches one segment, starting with the source that served the last failover, and decrypts it.
+     * Retries happen inside getBytes on this worker only, so the other fetches keep going meanwhile.
+     * A source whose host circuit is open is skipped rather than waited for, unless it is the last
+     * one left.
+     */
+    private byte[] fetchSegment(int index, List<HlsSegment> segments, List<List<HlsSegment>> mirrors,
+                                AtomicInteger activeSource, SegmentDecryptor decryptor) throws IOException {
+        int sources = 1 + mirrors.size();
+        int first = activeSource.get();
+        IOException failure = null;
+        for (int i = 0; i < sources; i++) {
+            int source = (first + i) % sources;
+            HlsSegment segment = (source == 0 ? segments : mirrors.get(source - 1)).get(index);
+            try {
+                byte[] data = decryptor.decrypt(segment.key(), segment.sequence(),
+                        http.getBytes(segment.uri(), i == sources - 1, throttle));
+                if (source != first && activeSource.compareAndSet(first, source)) {
+                    log.warn("Segment " + (index + 1) + " failed (" + failure.getMessage() + "), switched to "
+                            + (source == 0 ? "the primary stream" : "mirror " + source));
+                }
+                return data;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        throw failure;
+    }
+
+    // An init section under a key is encrypted with it too, with the first segment's IV.
+    private byte[] fetchInitSection(HlsMap map, HlsSegment first, SegmentDecryptor decryptor) throws IOException {
+        byte[] data;
+        if (map.rangeHeader() == null) {
+            data = http.getBytes(map.uri());
+        } else {
+            HttpResponse<byte[]> response = http.send(http.request(map.uri()).header("Range", map.rangeHeader()).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            HttpService.requireSuccess(response);
+            data = response.body();
+            if (response.statusCode() == 200 && data.length >= map.offset() + map.length()) {
+                data = Arrays.copyOfRange(data, (int) map.offset(), (int) (map.offset() + map.length()));
+            }
+        }
+        return decryptor.decrypt(first.key(), first.sequence(), data);
+    }
+
+    private void warnOnInitSwitch(List<HlsSegment> segments) {
+        HlsMap first = segments.get(0).map();
+        for (HlsSegment segment : segments) {
+            if (!Objects.equals(first, segment.map())) {
+                log.warn("Playlist switches init section at segment " + (segment.sequence() + 1)
+                        + "; only the first is written and later segments may not play");
+                return;
+            }
+        }
+    }
+
+    private void saveQuietly(DownloadJournal journal) {
+        try {
+            journal.save();
+        } catch (IOException e) {
+            log.error("Could not save download journal: " + e.getMessage());
+        }
+    }
+
+    // Segment URLs often carry short-lived tokens, so only the paths identify the playlist.
+    private static String fingerprint(List<HlsSegment> segments) {
+        StringBuilder sb = new StringBuilder();
+        for (HlsSegment segment : segments) {
+            String segUrl = segment.uri();
+            int query = segUrl.indexOf('?');
+            sb.append(query < 0 ? segUrl : segUrl.substring(0, query)).append('\n');
+        }
+        return segments.size() + ":" + Integer.toHexString(sb.toString().hashCode());
+    }
+
+    private static byte[] await(Future<byte[]> future, String segUrl) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + segUrl);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Segment download failed: " + segUrl, cause);
+        }
+    }
+
+    private static class CannotRemuxException extends IOException {
+
+        final int segment;
+        final File outputFile;
+
+        CannotRemuxException(int segment, File outputFile, IOException cause) {
+            super("Cannot remux segment " + segment, cause);
+            this.segment = segment;
+            this.outputFile = outputFile;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "hls-fetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package org.ts.clipharbor.download;
+
+import org.ts.clipharbor.hls.HlsKey;
+import org.ts.clipharbor.net.HttpService;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decrypts AES-128 HLS segments. Keys are fetched once per URI and shared by all segment fetches
+ * of a download; a {@code data:} URI carrying the key inline is decoded without a request.
+ */
+class SegmentDecryptor {
+
+    private static final int KEY_LENGTH = 16;
+
+    private final HttpService http;
+    private final Map<String, byte[]> keys = new ConcurrentHashMap<>();
+
+    SegmentDecryptor(HttpService http) {
+        this.http = http;
+    }
+
+    /** Returns {@code data} decrypted with {@code key}, or unchanged when {@code key} is {@code null}. */
+    byte[] decrypt(HlsKey key, long sequence, byte[] data) throws IOException {
+        if (key == null || key.isNone()) return data;
+        if (!HlsKey.AES_128.equals(key.method())) {
+            throw new IOException(key.method() + " encryption is not supported");
+        }
+        if (key.uri() == null) throw new IOException("AES-128 key tag has no URI");
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key(key.uri()), "AES"),
+                    new IvParameterSpec(key.ivFor(sequence)));
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not decrypt segment " + sequence + ": " + e.getMessage(), e);
+        }
+    }
+
+    private byte[] key(String uri) throws IOException {
+        byte[] key = keys.get(uri);
+        if (key != null) return key;
+        key = uri.startsWith("data:") ? decodeDataUri(uri) : http.getBytes(uri);
+        if (key.length != KEY_LENGTH) {
+            throw new IOException("AES-128 key has " + key.length + " bytes, expected " + KEY_LENGTH);
+        }
+        keys.putIfAbsent(uri, key);
+        return key;
+    }
+
+    private static byte[] decodeDataUri(String uri) throws IOException {
+        int comma = uri.indexOf(',');
+        if (comma < 0 || !uri.substring(0, comma).endsWith(";base64")) {
+            throw new IOException("Unsupported key URI: " + uri.substring(0, Math.min(uri.length(), 40)));
+        }
+        try {
+            return Base64.getDecoder().decode(uri.substring(comma + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed key URI", e);
+        }
+    }
+}
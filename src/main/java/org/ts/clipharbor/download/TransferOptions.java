@@ -0,0 +1,28 @@
+package org.ts.clipharbor.download;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tuning for the disk side of a transfer. Network reads are gathered into a buffer of
+ * {@code bufferSize} bytes before each write, {@code syncEveryBytes} forces the file to disk after
+ * that many written bytes (0 disables it) and {@code syncOnClose} forces it once at the end. Up to
+ * {@code writeBehindBuffers} full buffers may be waiting for the disk while the next one is read
+ * from the network; 0 writes each buffer before reading on. Each transfer writes them on up to
+ * {@code writerThreads} threads of its own.
+ */
+public record TransferOptions(int bufferSize, boolean directBuffers, long syncEveryBytes, boolean syncOnClose,
+                              int writeBehindBuffers, int writerThreads) {
+
+    public static final TransferOptions DEFAULT = new TransferOptions(1024 * 1024, true, 0, false, 2, 2);
+
+    public TransferOptions {
+        if (bufferSize < 4096) throw new IllegalArgumentException("bufferSize must be >= 4096");
+        if (syncEveryBytes < 0) throw new IllegalArgumentException("syncEveryBytes must be >= 0");
+        if (writeBehindBuffers < 0) throw new IllegalArgumentException("writeBehindBuffers must be >= 0");
+        if (writerThreads < 1) throw new IllegalArgumentException("writerThreads must be >= 1");
+    }
+
+    ByteBuffer allocate() {
+        return directBuffers ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+}
@@ -0,0 +1,172 @@
+package org.ts.clipharbor.download;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of one download, updated by the fetch and write threads and read by whoever shows
+ * it. Bytes are counted as they reach the output file and measured against the expected length
+ * when the server sent one; HLS downloads, whose length is unknown up front, are measured in
+ * segments instead. Each finished request (an HLS segment or a ranged chunk) records its latency so
+ * slow origins show up in the percentiles of {@link #snapshot()}.
+ */
+public class TransferProgress {
+
+    // Current throughput is measured over roughly the last WINDOW_SAMPLES * SAMPLE_INTERVAL.
+    private static final long SAMPLE_INTERVAL_NANOS = 250_000_000L;
+    private static final int WINDOW_SAMPLES = 20;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger segmentsDone = new AtomicInteger();
+    private volatile long totalBytes = -1;
+    private volatile int totalSegments = -1;
+    private volatile long resumedBytes;
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    private final long[] sampleNanos = new long[WINDOW_SAMPLES];
+    private final long[] sampleBytes = new long[WINDOW_SAMPLES];
+    private int sampleCount;
+    private volatile long nextSampleNanos;
+
+    private long[] latencies = new long[64];
+    private int latencyCount;
+
+    /**
+     * Restarts the clock for a transfer of the given size; either total may be {@code -1}. Work found
+     * on disk from an earlier run counts as done but not towards throughput.
+     */
+    public synchronized void start(long totalBytes, int totalSegments, long bytesAlreadyDone, int segmentsAlreadyDone) {
+        this.totalBytes = totalBytes;
+        this.totalSegments = totalSegments;
+        this.resumedBytes = bytesAlreadyDone;
+        bytesDone.set(bytesAlreadyDone);
+        segmentsDone.set(segmentsAlreadyDone);
+        latencyCount = 0;
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        sampleCount = 0;
+        nextSampleNanos = 0;
+        sample(startNanos);
+    }
+
+    public void addBytes(long bytes) {
+        long done = bytesDone.addAndGet(bytes);
+        long now = System.nanoTime();
+        if (now >= nextSampleNanos) {
+            synchronized (this) {
+                if (now >= nextSampleNanos) sample(now, done);
+            }
+        }
+    }
+
+    public void segmentDone() {
+        segmentsDone.incrementAndGet();
+    }
+
+    /** Records how long one segment or chunk request took, from sending it to its last byte. */
+    public synchronized void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) latencies = Arrays.copyOf(latencies, latencyCount * 2);
+        latencies[latencyCount++] = nanos;
+    }
+
+    public void finish() {
+        if (endNanos == 0) endNanos = System.nanoTime();
+    }
+
+    public long bytesDone() {
+        return bytesDone.get();
+    }
+
+    /** Fraction done in {@code [0, 1]}, or {@code -1} while the size is not known yet. */
+    public double fraction() {
+        long total = totalBytes;
+        if (total > 0) return Math.min(1.0, (double) bytesDone.get() / total);
+        int segments = totalSegments;
+        if (segments > 0) return Math.min(1.0, (double) segmentsDone.get() / segments);
+        return endNanos != 0 ? 1.0 : -1;
+    }
+
+    public synchronized Snapshot snapshot() {
+        long now = endNanos != 0 ? endNanos : System.nanoTime();
+        long done = bytesDone.get();
+        int segments = segmentsDone.get();
+        double elapsed = (now - startNanos) / 1e9;
+        double average = elapsed > 0 ? (done - resumedBytes) / elapsed : 0;
+        double current = endNanos != 0 ? 0 : currentRate(now, done);
+
+        long expected = totalBytes;
+        if (expected <= 0 && totalSegments > 0 && segments > 0) {
+            expected = Math.round((double) done / segments * totalSegments);
+        }
+        double rate = current > 0 ? current : average;
+        long eta = endNanos != 0 ? 0 : expected > 0 && rate > 0 ? Math.round(Math.max(0, expected - done) / rate) : -1;
+
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        return new Snapshot(done, totalBytes, segments, totalSegments, fraction(), current, average, eta,
+                Math.round(elapsed * 1000), percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.90),
+                percentileMillis(sorted, 0.99), sorted.length == 0 ? -1 : sorted[sorted.length - 1] / 1_000_000);
+    }
+
+    private void sample(long now) {
+        sample(now, bytesDone.get());
+    }
+
+    private void sample(long now, long done) {
+        int slot = sampleCount % WINDOW_SAMPLES;
+        sampleNanos[slot] = now;
+        sampleBytes[slot] = done;
+        sampleCount++;
+        nextSampleNanos = now + SAMPLE_INTERVAL_NANOS;
+    }
+
+    private double currentRate(long now, long done) {
+        if (sampleCount == 0) return 0;
+        int oldest = sampleCount <= WINDOW_SAMPLES ? 0 : sampleCount % WINDOW_SAMPLES;
+        double seconds = (now - sampleNanos[oldest]) / 1e9;
+        return seconds > 0 ? (done - sampleBytes[oldest]) / seconds : 0;
+    }
+
+    private static long percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) return -1;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000;
+    }
+
+    /**
+     * Point-in-time view of a transfer. Sizes and ETA are {@code -1} when unknown; latencies are in
+     * milliseconds and {@code -1} before the first request completes.
+     */
+    public record Snapshot(long bytesDone, long totalBytes, int segmentsDone, int totalSegments, double fraction,
+                           double currentBytesPerSecond, double averageBytesPerSecond, long etaSeconds,
+                           long elapsedMillis, long latencyP50Millis, long latencyP90Millis, long latencyP99Millis,
+                           long latencyMaxMillis) {
+
+        /** Short status text such as {@code "42% 3.1 MB/s ETA 0:12"}. */
+        public String summary() {
+            StringBuilder sb = new StringBuilder();
+            if (fraction >= 0) {
+                sb.append((int) (fraction * 100)).append('%');
+            } else {
+                sb.append(String.format(Locale.ROOT, "%.1f MB", bytesDone / (1024.0 * 1024.0)));
+            }
+            double rate = currentBytesPerSecond > 0 ? currentBytesPerSecond : averageBytesPerSecond;
+            sb.append(String.format(Locale.ROOT, " %.1f MB/s", rate / (1024.0 * 1024.0)));
+            if (etaSeconds > 0) sb.append(String.format(Locale.ROOT, " ETA %d:%02d", etaSeconds / 60, etaSeconds % 60));
+            return sb.toString();
+        }
+
+        public String toJson() {
+            return String.format(Locale.ROOT, "{\"bytesDone\":%d,\"totalBytes\":%d,\"segmentsDone\":%d,"
+                            + "\"totalSegments\":%d,\"fraction\":%.4f,\"currentBytesPerSecond\":%.0f,"
+                            + "\"averageBytesPerSecond\":%.0f,\"etaSeconds\":%d,\"elapsedMillis\":%d,"
+                            + "\"latencyMillis\":{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}}",
+                    bytesDone, totalBytes, segmentsDone, totalSegments, fraction, currentBytesPerSecond,
+                    averageBytesPerSecond, etaSeconds, elapsedMillis, latencyP50Millis, latencyP90Millis,
+                    latencyP99Millis, latencyMaxMillis);
+        }
+    }
+}
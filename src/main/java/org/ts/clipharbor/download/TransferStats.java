@@ -0,0 +1,66 @@
+package org.ts.clipharbor.download;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one download: bytes moved, channel reads, writes and forces issued, and the
+ * resulting throughput. Safe to update from several fetch threads at once.
+ */
+public class TransferStats {
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    void recordRead() {
+        reads.increment();
+    }
+
+    void recordWrite(int written) {
+        writes.increment();
+        bytes.add(written);
+    }
+
+    void recordSync() {
+        syncs.increment();
+    }
+
+    public void finish() {
+        if (endNanos == 0) endNanos = System.nanoTime();
+    }
+
+    public long bytes() {
+        return bytes.sum();
+    }
+
+    public long reads() {
+        return reads.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    public long syncs() {
+        return syncs.sum();
+    }
+
+    public double elapsedSeconds() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return (end - startNanos) / 1_000_000_000.0;
+    }
+
+    public double megabytesPerSecond() {
+        double seconds = elapsedSeconds();
+        return seconds <= 0 ? 0 : bytes() / (1024.0 * 1024.0) / seconds;
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT, "%.1f MB in %.2f s (%.2f MB/s), %d reads, %d writes, %d syncs",
+                bytes() / (1024.0 * 1024.0), elapsedSeconds(), megabytesPerSecond(), reads(), writes(), syncs());
+    }
+}
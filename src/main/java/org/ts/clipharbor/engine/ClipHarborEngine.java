@@ -0,0 +1,232 @@
+package org.ts.clipharbor.engine;
+
+import org.ts.clipharbor.browser.BrowserExtractor;
+import org.ts.clipharbor.browser.BrowserPool;
+import org.ts.clipharbor.download.FileDownloader;
+import org.ts.clipharbor.download.HlsSegmentDownloader;
+import org.ts.clipharbor.download.TransferProgress;
+import org.ts.clipharbor.extract.DomainFilter;
+import org.ts.clipharbor.extract.ExtractionCache;
+import org.ts.clipharbor.extract.PageAnalyzer;
+import org.ts.clipharbor.extract.StreamProbe;
+import org.ts.clipharbor.extract.StreamRanker;
+import org.ts.clipharbor.hls.HlsPlaylist;
+import org.ts.clipharbor.hls.HlsResolver;
+import org.ts.clipharbor.hls.HlsSegment;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.BandwidthLimiter;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Throttle;
+import org.ts.clipharbor.queue.DownloadJob;
+import org.ts.clipharbor.queue.DownloadScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The extraction and download pipeline without any UI: page analysis, browser fallback, probing
+ * and ranking of the candidate streams, and the download itself, run for each job of its {@link DownloadScheduler}.
+ * What a page yielded is kept in an {@link ExtractionCache}, so a page queued again goes straight to
+ * ranking. Downloads share the bandwidth of a {@link BandwidthLimiter}. The browser pool is only created the first time a page needs rendering, so runs that
+ * never fall back to Selenium never load it, unless {@link EngineSettings#browserWarmUp()} asks for
+ * sessions to be started up front.
+ */
+public class ClipHarborEngine implements AutoCloseable {
+
+    private static final DomainFilter blockedDomains = DomainFilter.DEFAULT_BLOCKLIST;
+
+    private final EngineSettings settings;
+    private final Log log;
+    private final HttpService http;
+    private final PageAnalyzer pageAnalyzer;
+    private final HlsResolver hlsResolver;
+    private final StreamRanker streamRanker;
+    private final ExtractionCache extractionCache;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final DownloadScheduler scheduler;
+    private BrowserPool browserPool;
+    private BrowserExtractor browserExtractor;
+
+    public ClipHarborEngine(EngineSettings settings, Log log) {
+        this.settings = settings;
+        this.log = log;
+        this.http = HttpService.create(settings.retryPolicy(), log);
+        this.pageAnalyzer = new PageAnalyzer(http, blockedDomains, log);
+        this.hlsResolver = new HlsResolver(http, HlsResolver.DEFAULT_CACHE_TTL, log);
+        this.streamRanker = new StreamRanker(http, hlsResolver, settings.probeBudget(), StreamRanker.DEFAULT_CACHE_TTL, log);
+        this.extractionCache = new ExtractionCache(settings.extractionCacheFile(), settings.extractionCacheTtl(),
+                ExtractionCache.DEFAULT_MAX_ENTRIES, log);
+        this.bandwidthLimiter = new BandwidthLimiter(settings.bandwidthLimits());
+        this.scheduler = new DownloadScheduler(settings.maxRunningJobs(), settings.maxJobsPerHost(), this::runJob);
+        if (settings.browserWarmUp() > 0) {
+            browserExtractor();
+            browserPool.warmUp(settings.browserWarmUp());
+        }
+    }
+
+    public DownloadScheduler scheduler() {
+        return scheduler;
+    }
+
+    public void runJob(DownloadJob job) throws IOException {
+        String url = job.url();
+        log.info("Starting download for URL: " + url);
+
+        Extraction extraction = StreamProbe.guess(url).kind() != StreamProbe.Kind.OTHER
+                ? new Extraction(List.of(url), false) : extract(job, url, true);
+        try {
+            download(job, extraction.candidates());
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // Stream URLs often carry expiring tokens, so a cached list can go stale before the page does.
+            if (!extraction.cached()) throw e;
+            log.warn("Cached candidates failed (" + e.getMessage() + "), analyzing the page again");
+            extractionCache.invalidate(url);
+            download(job, extract(job, url, false).candidates());
+        }
+        log.info("Stats for #" + job.id() + ": " + describe(job.progress().snapshot()));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        hlsResolver.shutdown();
+        streamRanker.shutdown();
+        synchronized (this) {
+            if (browserPool != null) browserPool.close();
+        }
+    }
+
+    /**
+     * Finds the stream candidates on a page: from the cache while its entry is fresh or the server
+     * confirms the page is unchanged, otherwise from the HTML and, failing that, from the browser.
+     */
+    private Extraction extract(DownloadJob job, String url, boolean useCache) {
+        ExtractionCache.Entry cached = useCache ? extractionCache.get(url) : null;
+        if (cached != null && extractionCache.isFresh(cached)) {
+            log.info("Using cached page analysis (" + cached.candidates().size() + " candidates)");
+            return new Extraction(cached.candidates(), true);
+        }
+        List<String> videoUrls = new ArrayList<>();
+        try {
+            job.update("Analyzing page");
+            log.debug(() -> "Attempting HTML parse...");
+            PageAnalyzer.PageAnalysis analysis = cached != null && cached.hasValidator()
+                    ? pageAnalyzer.analyze(url, cached.etag(), cached.lastModified())
+                    : pageAnalyzer.analyze(url);
+            if (analysis == null) {
+                log.info("Page unchanged, using cached page analysis (" + cached.candidates().size() + " candidates)");
+                extractionCache.revalidated(url);
+                return new Extraction(cached.candidates(), true);
+            }
+            videoUrls.addAll(analysis.links());
+            videoUrls.addAll(analysis.scriptUrls());
+
+            if (videoUrls.isEmpty()) {
+                job.update("Rendering page");
+                log.debug(() -> "HTML parse found nothing, trying Selenium...");
+                videoUrls.addAll(browserExtractor().extract(url));
+            }
+            extractionCache.put(url, videoUrls, analysis.etag(), analysis.lastModified());
+
+        } catch (IOException e) {
+            log.error("Parsing failed: " + e.getMessage());
+        }
+        return new Extraction(videoUrls, false);
+    }
+
+    private void download(DownloadJob job, List<String> candidates) throws IOException {
+        StreamProbe best = selectStream(candidates);
+        String videoUrl = best.url();
+        log.info("Best stream selected: " + videoUrl);
+        job.update("Downloading");
+        Throttle throttle = bandwidthLimiter.forJob(hostOf(videoUrl));
+
+        if (best.isHls()) {
+            log.debug(() -> "Downloading HLS stream...");
+            HlsResolver.ResolvedStream stream = hlsResolver.resolve(videoUrl);
+            if (stream.variant() != null) log.info("Selected variant: " + stream.variant());
+            downloadHlsSegments(stream, job, throttle);
+        } else {
+            log.debug(() -> "Downloading " + best.kind() + " file...");
+            downloadFile(videoUrl, scheduler.allocateOutput(job, best.extension(), videoUrl), job.progress(), throttle);
+        }
+    }
+
+    private StreamProbe selectStream(List<String> candidates) throws IOException {
+        for (StreamProbe probe : streamRanker.rank(candidates)) {
+            if (hostOf(probe.url()) != null) return probe;
+            log.warn("Skipping stream without a usable host: " + probe.url());
+        }
+        throw new IOException("No valid video streams found");
+    }
+
+    // Null when the URL does not parse or names no host, which no downloader could fetch anyway.
+    private static String hostOf(String url) {
+        try {
+            return new URI(url).getHost();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private synchronized BrowserExtractor browserExtractor() {
+        if (browserExtractor == null) {
+            browserPool = new BrowserPool(settings.browserSessions(), settings.headlessBrowser(), log);
+            browserExtractor = new BrowserExtractor(browserPool, blockedDomains, settings.browserMaxWait(), log);
+        }
+        return browserExtractor;
+    }
+
+    private static String describe(TransferProgress.Snapshot stats) {
+        return String.format(Locale.ROOT, "%.1f MB in %.1f s, avg %.2f MB/s, latency p50/p90/p99 %d/%d/%d ms",
+                stats.bytesDone() / (1024.0 * 1024.0), stats.elapsedMillis() / 1000.0,
+                stats.averageBytesPerSecond() / (1024.0 * 1024.0),
+                stats.latencyP50Millis(), stats.latencyP90Millis(), stats.latencyP99Millis());
+    }
+
+    private void downloadFile(String fileUrl, File outputFile, TransferProgress progress, Throttle throttle)
+            throws IOException {
+        log.debug(() -> "Downloading file: " + fileUrl);
+        new FileDownloader(http, settings.fileConnections(), settings.fileChunkSize(), settings.transferOptions(),
+                throttle, log)
+                .download(fileUrl, outputFile, progress);
+        log.info("File saved: " + outputFile.getName());
+    }
+
+    // The playlist gives no size, so the preflight goes by the advertised bitrate when there is one.
+    private void downloadHlsSegments(HlsResolver.ResolvedStream stream, DownloadJob job, Throttle throttle)
+            throws IOException {
+        if (stream.audio() != null) {
+            job.update("Downloading audio");
+            File audio = downloadPlaylist(stream.audio(), List.of(), "-audio", -1, job, throttle);
+            log.warn("Audio is not part of the video stream; saved separately as " + audio.getName());
+            job.update("Downloading");
+        }
+        long expected = stream.variant() != null && stream.variant().bandwidth() > 0
+                ? Math.round(stream.variant().bandwidth() / 8.0 * stream.playlist().totalDuration()) : -1;
+        File video = downloadPlaylist(stream.playlist(), stream.mirrorSegments(), "", expected, job, throttle);
+        log.info("HLS download complete: " + video.getName());
+    }
+
+    private File downloadPlaylist(HlsPlaylist playlist, List<List<HlsSegment>> mirrors, String suffix, long expected,
+                                  DownloadJob job, Throttle throttle) throws IOException {
+        log.debug(() -> "Downloading " + playlist.segments().size() + " segments with "
+                + settings.hlsConcurrency() + " parallel fetches");
+        new HlsSegmentDownloader(http, settings.hlsConcurrency(), settings.hlsMaxBufferedBytes(),
+                settings.transferOptions(), settings.remuxHls(), throttle, log)
+                .download(playlist.segments(), mirrors, expected,
+                        extension -> scheduler.allocateOutput(job, suffix + extension, playlist.uri().toString()),
+                        job.progress());
+        return job.outputFile();
+    }
+
+    private record Extraction(List<String> candidates, boolean cached) {}
+}
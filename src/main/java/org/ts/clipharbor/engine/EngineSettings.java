@@ -0,0 +1,135 @@
+package org.ts.clipharbor.engine;
+
+import org.ts.clipharbor.browser.BrowserExtractor;
+import org.ts.clipharbor.browser.BrowserPool;
+import org.ts.clipharbor.download.FileDownloader;
+import org.ts.clipharbor.download.HlsSegmentDownloader;
+import org.ts.clipharbor.download.TransferOptions;
+import org.ts.clipharbor.extract.ExtractionCache;
+import org.ts.clipharbor.extract.StreamRanker;
+import org.ts.clipharbor.net.BandwidthLimiter;
+import org.ts.clipharbor.net.RetryPolicy;
+import org.ts.clipharbor.queue.DownloadScheduler;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/** Tunables for {@link ClipHarborEngine}; {@link #DEFAULTS} matches what the desktop app uses. */
+public record EngineSettings(int maxRunningJobs, int maxJobsPerHost,
+                             int fileConnections, long fileChunkSize,
+                             int hlsConcurrency, long hlsMaxBufferedBytes, boolean remuxHls,
+                             TransferOptions transferOptions, BandwidthLimiter.Limits bandwidthLimits, RetryPolicy retryPolicy,
+                             int browserSessions, boolean headlessBrowser, Duration browserMaxWait, int browserWarmUp,
+                             Duration probeBudget, File extractionCacheFile, Duration extractionCacheTtl) {
+
+    public static final EngineSettings DEFAULTS = new EngineSettings(
+            DownloadScheduler.DEFAULT_MAX_RUNNING, DownloadScheduler.DEFAULT_MAX_PER_HOST,
+            FileDownloader.DEFAULT_CONNECTIONS, FileDownloader.DEFAULT_CHUNK_SIZE,
+            HlsSegmentDownloader.DEFAULT_CONCURRENCY, HlsSegmentDownloader.DEFAULT_MAX_BUFFERED_BYTES, true,
+            TransferOptions.DEFAULT, BandwidthLimiter.Limits.UNLIMITED, RetryPolicy.DEFAULT,
+            BrowserPool.DEFAULT_MAX_SESSIONS, true, BrowserExtractor.DEFAULT_MAX_WAIT, 0,
+            StreamRanker.DEFAULT_BUDGET, ExtractionCache.defaultFile(), ExtractionCache.DEFAULT_TTL);
+
+    public EngineSettings withJobLimits(int maxRunningJobs, int maxJobsPerHost) {
+        return copy(c -> {
+            c.maxRunningJobs = maxRunningJobs;
+            c.maxJobsPerHost = maxJobsPerHost;
+        });
+    }
+
+    public EngineSettings withRetryPolicy(RetryPolicy retryPolicy) {
+        return copy(c -> c.retryPolicy = retryPolicy);
+    }
+
+    public EngineSettings withConnections(int fileConnections, int hlsConcurrency) {
+        return copy(c -> {
+            c.fileConnections = fileConnections;
+            c.hlsConcurrency = hlsConcurrency;
+        });
+    }
+
+    /** Whether HLS transport streams are remuxed into MP4 ({@code true}) or saved as {@code .ts}. */
+    public EngineSettings withRemuxHls(boolean remuxHls) {
+        return copy(c -> c.remuxHls = remuxHls);
+    }
+
+    /**
+     * Where page extractions are cached and for how long they are trusted without revalidation; a
+     * {@code null} file keeps the cache in memory and a zero TTL disables it.
+     */
+    public EngineSettings withExtractionCache(File extractionCacheFile, Duration extractionCacheTtl) {
+        return copy(c -> {
+            c.extractionCacheFile = extractionCacheFile;
+            c.extractionCacheTtl = extractionCacheTtl;
+        });
+    }
+
+    /** Download bandwidth caps for the whole engine, per media host and per job. */
+    public EngineSettings withBandwidthLimits(BandwidthLimiter.Limits bandwidthLimits) {
+        return copy(c -> c.bandwidthLimits = bandwidthLimits);
+    }
+
+    /**
+     * How many browser sessions the engine starts in the background when it is created, so the first
+     * page that needs rendering does not wait for a browser launch; 0 starts none until one is needed.
+     */
+    public EngineSettings withBrowserWarmUp(int browserWarmUp) {
+        return copy(c -> c.browserWarmUp = browserWarmUp);
+    }
+
+    private EngineSettings copy(Consumer<Copy> change) {
+        Copy copy = new Copy(this);
+        change.accept(copy);
+        return copy.build();
+    }
+
+    // Every component as a field, so each wither sets only its own and the rest carry over.
+    private static final class Copy {
+
+        int maxRunningJobs;
+        int maxJobsPerHost;
+        int fileConnections;
+        long fileChunkSize;
+        int hlsConcurrency;
+        long hlsMaxBufferedBytes;
+        boolean remuxHls;
+        TransferOptions transferOptions;
+        BandwidthLimiter.Limits bandwidthLimits;
+        RetryPolicy retryPolicy;
+        int browserSessions;
+        boolean headlessBrowser;
+        Duration browserMaxWait;
+        int browserWarmUp;
+        Duration probeBudget;
+        File extractionCacheFile;
+        Duration extractionCacheTtl;
+
+        Copy(EngineSettings settings) {
+            maxRunningJobs = settings.maxRunningJobs;
+            maxJobsPerHost = settings.maxJobsPerHost;
+            fileConnections = settings.fileConnections;
+            fileChunkSize = settings.fileChunkSize;
+            hlsConcurrency = settings.hlsConcurrency;
+            hlsMaxBufferedBytes = settings.hlsMaxBufferedBytes;
+            remuxHls = settings.remuxHls;
+            transferOptions = settings.transferOptions;
+            bandwidthLimits = settings.bandwidthLimits;
+            retryPolicy = settings.retryPolicy;
+            browserSessions = settings.browserSessions;
+            headlessBrowser = settings.headlessBrowser;
+            browserMaxWait = settings.browserMaxWait;
+            browserWarmUp = settings.browserWarmUp;
+            probeBudget = settings.probeBudget;
+            extractionCacheFile = settings.extractionCacheFile;
+            extractionCacheTtl = settings.extractionCacheTtl;
+        }
+
+        EngineSettings build() {
+            return new EngineSettings(maxRunningJobs, maxJobsPerHost, fileConnections, fileChunkSize,
+                    hlsConcurrency, hlsMaxBufferedBytes, remuxHls, transferOptions, bandwidthLimits, retryPolicy,
+                    browserSessions, headlessBrowser, browserMaxWait, browserWarmUp, probeBudget, extractionCacheFile,
+                    extractionCacheTtl);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.ts.clipharbor.extract;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Case-insensitive multi-pattern substring matcher used to drop ad and tracker URLs. The patterns
+ * are compiled into an Aho-Corasick automaton with a full ASCII transition table, so a URL is
+ * checked against every pattern in one pass with one table lookup per character.
+ */
+public final class DomainFilter {
+
+    public static final DomainFilter DEFAULT_BLOCKLIST = new DomainFilter(Set.of(
+            "doubleclick", "googletag", "adservice", "facebook", "analytics", "tracking"
+    ));
+
+    private static final int ALPHABET = 128;
+
+    private final int[][] transitions;
+    private final boolean[] accepting;
+
+    public DomainFilter(Collection<String> patterns) {
+        List<int[]> next = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        next.add(newRow());
+        terminal.add(false);
+
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) continue;
+            int state = 0;
+            for (char c : pattern.toLowerCase(Locale.ROOT).toCharArray()) {
+                if (c >= ALPHABET) throw new IllegalArgumentException("Non-ASCII pattern: " + pattern);
+                if (next.get(state)[c] <= 0) {
+                    next.get(state)[c] = next.size();
+                    next.add(newRow());
+                    terminal.add(false);
+                }
+                state = next.get(state)[c];
+            }
+            terminal.set(state, true);
+        }
+
+        int size = next.size();
+        transitions = next.toArray(new int[0][]);
+        accepting = new boolean[size];
+        int[] fail = new int[size];
+        for (int i = 0; i < size; i++) accepting[i] = terminal.get(i);
+
+        // Breadth-first: turn the trie into a DFA by filling missing edges with the failure state's.
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = transitions[0][c];
+            if (child > 0) {
+                fail[child] = 0;
+                queue.add(child);
+            } else {
+                transitions[0][c] = 0;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] |= accepting[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = transitions[state][c];
+                if (child > 0) {
+                    fail[child] = transitions[fail[state]][c];
+                    queue.add(child);
+                } else {
+                    transitions[state][c] = transitions[fail[state]][c];
+                }
+            }
+        }
+    }
+
+    /** Returns {@code true} if any pattern occurs in {@code text}, ignoring ASCII case. */
+    public boolean matches(CharSequence text) {
+        if (accepting[0]) return true;
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= ALPHABET) {
+                state = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            state = transitions[state][c];
+            if (accepting[state]) return true;
+        }
+        return false;
+    }
+
+    private static int[] newRow() {
+        return new int[ALPHABET];
+    }
+}
@@ -0,0 +1,180 @@
+package org.ts.clipharbor.extract;
+
+import org.ts.clipharbor.log.Log;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which stream candidates a page yielded, so a page seen again skips the fetch, the
+ * scan and above all the browser. An entry younger than the TTL is used as is; an older one is
+ * revalidated with the {@code ETag} and {@code Last-Modified} the page was served with, and kept
+ * when the server answers {@code 304}. At most {@code maxEntries} pages are kept, the least
+ * recently used going first.
+ *
+ * <p>The cache is a tab-separated text file, one page per line, rewritten whole on each change
+ * through a temporary file so a crash never leaves it half written. Without a file the cache
+ * lives for the process only; a zero TTL turns it off.
+ */
+public class ExtractionCache {
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(6);
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    // Entries not validated for this long are dropped when the file is loaded.
+    private static final Duration MAX_STALE = Duration.ofDays(7);
+    private static final String HEADER = "# ClipHarbor extraction cache v2";
+
+    private final File file;
+    private final Duration ttl;
+    private final Log log;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * One cached page. Either validator is {@code null} when the server did not send it. Times are
+     * epoch milliseconds.
+     */
+    public record Entry(String pageUrl, List<String> candidates, String etag, String lastModified,
+                        long storedAt, long validatedAt) {
+
+        public boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        Entry revalidated(long now) {
+            return new Entry(pageUrl, candidates, etag, lastModified, storedAt, now);
+        }
+    }
+
+    public ExtractionCache(File file, Duration ttl, int maxEntries, Log log) {
+        this.file = file;
+        this.ttl = ttl;
+        this.log = log;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file != null && isEnabled()) load();
+    }
+
+    /** {@code ~/.clipharbor/extraction-cache.tsv} */
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".clipharbor"), "extraction-cache.tsv");
+    }
+
+    public boolean isEnabled() {
+        return !ttl.isZero() && !ttl.isNegative();
+    }
+
+    /** The entry for {@code pageUrl}, fresh or not, or {@code null} when there is none. */
+    public synchronized Entry get(String pageUrl) {
+        return isEnabled() ? entries.get(key(pageUrl)) : null;
+    }
+
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.validatedAt() < ttl.toMillis();
+    }
+
+    public synchronized void put(String pageUrl, List<String> candidates, String etag, String lastModified) {
+        if (!isEnabled() || candidates.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        entries.put(key(pageUrl), new Entry(key(pageUrl), List.copyOf(candidates), clean(etag),
+                clean(lastModified), now, now));
+        save();
+    }
+
+    /** Marks the entry as confirmed current by the server. */
+    public synchronized void revalidated(String pageUrl) {
+        Entry entry = entries.get(key(pageUrl));
+        if (entry == null) return;
+        entries.put(entry.pageUrl(), entry.revalidated(System.currentTimeMillis()));
+        save();
+    }
+
+    /** Drops the entry, for when its candidates turned out not to be downloadable any more. */
+    public synchronized void invalidate(String pageUrl) {
+        if (entries.remove(key(pageUrl)) != null) save();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // The fragment never reaches the server, so it cannot change what the page yields.
+    private static String key(String pageUrl) {
+        int hash = pageUrl.indexOf('#');
+        return hash < 0 ? pageUrl : pageUrl.substring(0, hash);
+    }
+
+    private void load() {
+        if (!file.isFile()) return;
+        long oldest = System.currentTimeMillis() - MAX_STALE.toMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                log.warn("Ignoring extraction cache in an unknown format: " + file);
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry != null && entry.validatedAt() >= oldest) entries.put(entry.pageUrl(), entry);
+            }
+            log.debug(() -> "Loaded " + entries.size() + " cached page extractions");
+        } catch (IOException e) {
+            log.warn("Could not read extraction cache: " + e.getMessage());
+        }
+    }
+
+    // storedAt, validatedAt, etag, lastModified, page URL, candidates...; "-" for no validator
+    private static Entry parse(String line) {
+        String[] f = line.split("\t");
+        if (f.length < 6) return null;
+        try {
+            return new Entry(f[4], List.of(Arrays.copyOfRange(f, 5, f.length)),
+                    f[2].equals("-") ? null : f[2], f[3].equals("-") ? null : f[3],
+                    Long.parseLong(f[0]), Long.parseLong(f[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void save() {
+        if (file == null) return;
+        // Entries are written least recently used first, so loading them rebuilds the same order.
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(HEADER);
+        for (Entry e : entries.values()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(e.storedAt()).append('\t').append(e.validatedAt())
+                    .append('\t').append(e.etag() == null ? "-" : e.etag())
+                    .append('\t').append(e.lastModified() == null ? "-" : e.lastModified())
+                    .append('\t').append(e.pageUrl());
+            for (String candidate : e.candidates()) sb.append('\t').append(candidate);
+            lines.add(sb.toString());
+        }
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null) Files.createDirectories(dir.toPath());
+            File tmp = new File(file.getPath() + ".tmp");
+            Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save extraction cache: " + e.getMessage());
+        }
+    }
+
+    // Values are tab-separated on disk; a header value never legitimately contains a tab or newline.
+    private static String clean(String value) {
+        return value == null || value.isBlank() ? null : value.replaceAll("[\t\r\n]", " ");
+    }
+}
@@ -0,0 +1,112 @@
+package org.ts.clipharbor.extract;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Fetches a page once, parses it once, and runs both the element selectors and the inline script
+ * scan over that single {@link Document}. Each stage is timed so slow extraction can be traced to
+ * the network, the parser or the scanners.
+ */
+public class PageAnalyzer {
+
+    private static final String VIDEO_SELECTOR =
+            "video[src$=.mp4], video > source[src$=.mp4], a[href$=.mp4], a[href$=.m3u8], a[href$=.ts]";
+
+    private final HttpService http;
+    private final DomainFilter blockedDomains;
+    private final VideoUrlExtractor extractor;
+    private final Log log;
+
+    public PageAnalyzer(HttpService http, DomainFilter blockedDomains, Log log) {
+        this.http = http;
+        this.blockedDomains = blockedDomains;
+        this.extractor = new VideoUrlExtractor(blockedDomains);
+        this.log = log;
+    }
+
+    public PageAnalysis analyze(String pageUrl) throws IOException {
+        return analyze(pageUrl, null, null);
+    }
+
+    /**
+     * Like {@link #analyze(String)}, revalidating an earlier fetch whose {@code ETag} and
+     * {@code Last-Modified} were given; returns {@code null} when the page has not changed since.
+     */
+    public PageAnalysis analyze(String pageUrl, String etag, String lastModified) throws IOException {
+        long start = System.nanoTime();
+        HttpService.TextResource page = etag == null && lastModified == null
+                ? http.getText(pageUrl) : http.getTextIfModified(pageUrl, etag, lastModified);
+        long fetched = System.nanoTime();
+        if (page.status() == 304) {
+            log.debug(() -> "Page not modified (" + millis(start, fetched) + " ms)");
+            return null;
+        }
+        Document doc = Jsoup.parse(new ByteArrayInputStream(page.body()), page.charset(), page.uri().toString());
+        long parsed = System.nanoTime();
+
+        PageAnalysis analysis = analyze(doc);
+        Timings timings = new Timings(millis(start, fetched), millis(fetched, parsed),
+                analysis.timings().selectorMillis(), analysis.timings().scriptMillis());
+        log.debug(() -> "Page analysis: " + timings);
+        return new PageAnalysis(analysis.links(), analysis.scriptUrls(), timings,
+                page.headers().firstValue("ETag").orElse(null), page.headers().firstValue("Last-Modified").orElse(null));
+    }
+
+    /** Runs the selector and script stages over an already parsed document. */
+    public PageAnalysis analyze(Document doc) {
+        long start = System.nanoTime();
+        List<String> links = selectLinks(doc);
+        long selected = System.nanoTime();
+        List<String> scriptUrls = scanScripts(doc);
+        long scanned = System.nanoTime();
+        return new PageAnalysis(links, scriptUrls, new Timings(0, 0, millis(start, selected), millis(selected, scanned)),
+                null, null);
+    }
+
+    private List<String> selectLinks(Document doc) {
+        List<String> videos = new ArrayList<>();
+        for (Element el : doc.select(VIDEO_SELECTOR)) {
+            String videoUrl = el.hasAttr("src") ? el.absUrl("src") : el.absUrl("href");
+            if (!videoUrl.isEmpty() && !blockedDomains.matches(videoUrl)) {
+                videos.add(videoUrl);
+                log.debug(() -> "Found video link: " + videoUrl);
+            }
+        }
+        return videos;
+    }
+
+    private List<String> scanScripts(Document doc) {
+        Set<String> found = new LinkedHashSet<>();
+        // Script bodies are data nodes, so text() would always be empty here.
+        for (Element script : doc.select("script")) {
+            for (String url : extractor.extract(script.data())) {
+                if (found.add(url)) log.debug(() -> "Script candidate: " + url);
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static long millis(long from, long to) {
+        return (to - from) / 1_000_000;
+    }
+
+    /** What a page yielded, with the validators its server sent, if any, for revalidating it later. */
+    public record PageAnalysis(List<String> links, List<String> scriptUrls, Timings timings,
+                               String etag, String lastModified) {}
+
+    public record Timings(long fetchMillis, long parseMillis, long selectorMillis, long scriptMillis) {
+        @Override
+        public String toString() {
+            return "fetch " + fetchMillis + " ms, parse " + parseMillis + " ms, selectors "
+                    + selectorMillis + " ms, scripts " + scriptMillis + " ms";
+        }
+    }
+}
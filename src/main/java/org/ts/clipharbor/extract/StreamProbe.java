@@ -0,0 +1,90 @@
+package org.ts.clipharbor.extract;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * What is known about one candidate stream URL. {@link #guess} fills in only what the URL itself
+ * says; probed entries add the response status, type and size, or for playlists the best variant's
+ * bandwidth and resolution and the media duration. Unknown numbers are 0, an unknown status is -1.
+ */
+public record StreamProbe(String url, Kind kind, boolean probed, int status, String contentType, long length,
+                          long bandwidth, int width, int height, double durationSeconds) {
+
+    public enum Kind { HLS_MASTER, HLS_MEDIA, MP4, TS, OTHER }
+
+    // Anything shorter or smaller than this is more likely a pre-roll or a teaser than the video.
+    static final long MIN_MAIN_BYTES = 2L * 1024 * 1024;
+    static final double MIN_MAIN_SECONDS = 30;
+
+    public static StreamProbe guess(String url) {
+        return new StreamProbe(url, kindFromPath(url), false, -1, null, 0, 0, 0, 0, 0);
+    }
+
+    public boolean isHls() {
+        return kind == Kind.HLS_MASTER || kind == Kind.HLS_MEDIA;
+    }
+
+    /**
+     * File extension to save a direct download under. HLS streams usually end up as {@code ".mp4"}
+     * since their segments are remuxed; the segment downloader picks {@code ".ts"} only when it keeps
+     * the raw transport stream, which is what is returned for them here.
+     */
+    public String extension() {
+        return switch (kind) {
+            case MP4 -> ".mp4";
+            case HLS_MASTER, HLS_MEDIA, TS -> ".ts";
+            default -> ".bin";
+        };
+    }
+
+    /** {@code false} when the probe found the URL gone, the server failing, or a response that is not media. */
+    public boolean usable() {
+        if (!probed) return true;
+        if (status == 404 || status == 410 || status >= 500) return false;
+        if (contentType == null || isHls()) return true;
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("video/") || type.contains("mpegurl") || type.contains("octet-stream")
+                || type.startsWith("binary/") || type.startsWith("application/mp4");
+    }
+
+    public boolean likelyAd() {
+        if (isHls()) return kind == Kind.HLS_MEDIA && durationSeconds > 0 && durationSeconds < MIN_MAIN_SECONDS;
+        return length > 0 && length < MIN_MAIN_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(kind.toString()).append(' ').append(url);
+        if (!probed) return sb.append(" (not probed)").toString();
+        if (!usable()) return sb.append(" (HTTP ").append(status).append(')').toString();
+        if (bandwidth > 0) sb.append(", ").append(bandwidth / 1000).append(" kbps");
+        if (width > 0) sb.append(", ").append(width).append('x').append(height);
+        if (length > 0) sb.append(", ").append(length / 1024).append(" KB");
+        if (durationSeconds > 0) sb.append(", ").append(Math.round(durationSeconds)).append(" s");
+        return likelyAd() ? sb.append(" (likely ad)").toString() : sb.toString();
+    }
+
+    static Kind kindFromPath(String url) {
+        String path;
+        try {
+            path = URI.create(url).getPath();
+        } catch (IllegalArgumentException e) {
+            path = url;
+        }
+        String p = path == null ? "" : path.toLowerCase(Locale.ROOT);
+        if (p.endsWith(".m3u8")) return p.contains("master") ? Kind.HLS_MASTER : Kind.HLS_MEDIA;
+        if (p.endsWith(".mp4")) return Kind.MP4;
+        if (p.endsWith(".ts")) return Kind.TS;
+        return Kind.OTHER;
+    }
+
+    static Kind kindFromType(String contentType, Kind fallback) {
+        if (contentType == null) return fallback;
+        String type = contentType.toLowerCase(Locale.ROOT);
+        if (type.contains("mpegurl")) return fallback == Kind.HLS_MASTER ? Kind.HLS_MASTER : Kind.HLS_MEDIA;
+        if (type.startsWith("video/mp4") || type.startsWith("application/mp4")) return Kind.MP4;
+        if (type.startsWith("video/mp2t")) return Kind.TS;
+        return fallback;
+    }
+}
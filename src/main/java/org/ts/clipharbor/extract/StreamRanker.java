@@ -0,0 +1,240 @@
+package org.ts.clipharbor.extract;
+
+import org.ts.clipharbor.hls.HlsPlaylist;
+import org.ts.clipharbor.hls.HlsResolver;
+import org.ts.clipharbor.hls.HlsVariant;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the candidate streams found on a page, best first. Candidates that differ only in their
+ * query string are collapsed to the first one seen. The rest are probed in parallel: playlists are
+ * fetched (through the {@link HlsResolver} cache) for their best variant or duration, other URLs
+ * get a single HEAD, without retries, for status, type and size. Whatever has not answered when the
+ * latency budget runs out is cancelled and ranked on its URL alone. Probe results are cached per
+ * URL, so a retried or repeated page does not probe again.
+ *
+ * <p>Ranking puts usable media before error responses and non-media types, likely ads (small files,
+ * short media playlists) after real content, playlists before plain files, and then higher
+ * bandwidth, resolution, size and duration first.
+ */
+public class StreamRanker {
+
+    public static final Duration DEFAULT_BUDGET = Duration.ofSeconds(3);
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(2);
+
+    private static final int PROBE_THREADS = 8;
+    private static final int MAX_CACHED = 512;
+
+    static final Comparator<StreamProbe> ORDER = Comparator
+            .comparing(StreamProbe::usable).reversed()
+            .thenComparing(StreamProbe::likelyAd)
+            .thenComparingInt(p -> kindRank(p.kind()))
+            .thenComparing(Comparator.comparingLong(StreamProbe::bandwidth).reversed())
+            .thenComparing(Comparator.comparingLong((StreamProbe p) -> (long) p.width() * p.height()).reversed())
+            .thenComparing(Comparator.comparingLong(StreamProbe::length).reversed())
+            .thenComparing(Comparator.comparingDouble(StreamProbe::durationSeconds).reversed());
+
+    private final HttpService http;
+    private final HlsResolver hlsResolver;
+    private final Duration budget;
+    private final Duration cacheTtl;
+    private final Log log;
+    private final ConcurrentHashMap<String, CachedProbe> cache = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public StreamRanker(HttpService http, HlsResolver hlsResolver, Duration budget, Duration cacheTtl, Log log) {
+        this.http = http;
+        this.hlsResolver = hlsResolver;
+        this.budget = budget;
+        this.cacheTtl = cacheTtl;
+        this.log = log;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+            Thread t = new Thread(r, "stream-probe-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the distinct candidates best first. A single candidate is returned as guessed from its
+     * URL without probing, since there is nothing to choose between.
+     */
+    public List<StreamProbe> rank(Collection<String> candidates) throws IOException {
+        List<String> distinct = dedupe(candidates);
+        if (distinct.size() <= 1) {
+            List<StreamProbe> single = new ArrayList<>();
+            for (String url : distinct) single.add(StreamProbe.guess(url));
+            return single;
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<StreamProbe>> probes = new ArrayList<>(distinct.size());
+        for (String url : distinct) probes.add(probe(url));
+        try {
+            CompletableFuture.allOf(probes.toArray(CompletableFuture<?>[]::new))
+                    .get(budget.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while probing streams");
+        } catch (ExecutionException | TimeoutException ignored) {
+            // Whatever has not finished is ranked on its URL below.
+        }
+
+        List<StreamProbe> ranked = new ArrayList<>(distinct.size());
+        int pending = 0;
+        for (int i = 0; i < distinct.size(); i++) {
+            CompletableFuture<StreamProbe> probe = probes.get(i);
+            if (probe.isDone() && !probe.isCompletedExceptionally()) {
+                ranked.add(probe.join());
+            } else {
+                ranked.add(StreamProbe.guess(distinct.get(i)));
+                if (!probe.isDone()) {
+                    pending++;
+                    cancel(distinct.get(i), probe);
+                }
+            }
+        }
+        ranked.sort(ORDER);
+
+        int unfinished = pending;
+        log.debug(() -> "Probed " + distinct.size() + " candidates in " + (System.nanoTime() - start) / 1_000_000
+                + " ms" + (unfinished > 0 ? " (" + unfinished + " over budget)" : "") + ", best: " + ranked.get(0));
+        return ranked;
+    }
+
+    /**
+     * Probes one URL, served from the cache while the previous result is fresh. Cancelling the
+     * returned future interrupts the probe.
+     */
+    public CompletableFuture<StreamProbe> probe(String url) {
+        long now = System.nanoTime();
+        if (cache.size() > MAX_CACHED) cache.values().removeIf(e -> e.expiresAt - now <= 0);
+        return cache.compute(url, (key, existing) -> {
+            if (existing != null && existing.expiresAt - now > 0) return existing;
+            return new CachedProbe(start(key), now + cacheTtl.toNanos());
+        }).probe;
+    }
+
+    private CompletableFuture<StreamProbe> start(String url) {
+        CompletableFuture<StreamProbe> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(load(url));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((probe, e) -> {
+            if (result.isCancelled()) task.cancel(true);
+        });
+        return result;
+    }
+
+    // An over-budget probe is stopped and forgotten, so the next page asks again instead of being
+    // served the cancellation.
+    private void cancel(String url, CompletableFuture<StreamProbe> probe) {
+        probe.cancel(true);
+        cache.computeIfPresent(url, (key, existing) -> existing.probe == probe ? null : existing);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Drops candidates that only differ from an earlier one in query string or fragment. */
+    static List<String> dedupe(Collection<String> candidates) {
+        Map<String, String> byAsset = new LinkedHashMap<>();
+        for (String url : candidates) {
+            if (url == null || url.isBlank()) continue;
+            byAsset.putIfAbsent(assetKey(url.trim()), url.trim());
+        }
+        return new ArrayList<>(byAsset.values());
+    }
+
+    static String assetKey(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() != null) {
+                return uri.getScheme() + "://" + uri.getHost().toLowerCase(Locale.ROOT)
+                        + (uri.getPort() >= 0 ? ":" + uri.getPort() : "") + uri.getRawPath();
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        int cut = url.length();
+        for (char c : new char[]{'?', '#'}) {
+            int i = url.indexOf(c);
+            if (i >= 0) cut = Math.min(cut, i);
+        }
+        return url.substring(0, cut);
+    }
+
+    // Failures become an unusable probe rather than an exception, so they rank last instead of
+    // being treated as "not probed".
+    private StreamProbe load(String url) {
+        StreamProbe.Kind kind = StreamProbe.kindFromPath(url);
+        try {
+            if (kind == StreamProbe.Kind.HLS_MASTER || kind == StreamProbe.Kind.HLS_MEDIA) return probePlaylist(url);
+
+            HttpResponse<Void> response = http.headOnce(url, budget);
+            HttpHeaders headers = response.headers();
+            String type = headers.firstValue("Content-Type").orElse(null);
+            long length = headers.firstValueAsLong("Content-Length").orElse(0);
+            int status = response.statusCode();
+            // Plenty of CDNs refuse HEAD (or sign URLs for GET only); that says nothing about the stream.
+            if (status >= 400 && status != 404 && status != 410 && status < 500) return StreamProbe.guess(url);
+            StreamProbe.Kind typed = StreamProbe.kindFromType(type, kind);
+            if (status < 400 && (typed == StreamProbe.Kind.HLS_MEDIA || typed == StreamProbe.Kind.HLS_MASTER)) {
+                return probePlaylist(url);
+            }
+            return new StreamProbe(url, typed, true, status, type, length, 0, 0, 0, 0);
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug(() -> "Probe of " + url + " failed: " + e.getMessage());
+            return new StreamProbe(url, kind, true, 599, null, 0, 0, 0, 0, 0);
+        }
+    }
+
+    private StreamProbe probePlaylist(String url) throws IOException {
+        HlsPlaylist playlist;
+        try {
+            playlist = hlsResolver.fetch(url).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while probing " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Playlist probe failed: " + url, cause);
+        }
+        if (playlist.isMaster()) {
+            HlsVariant best = HlsResolver.rank(playlist).get(0);
+            return new StreamProbe(url, StreamProbe.Kind.HLS_MASTER, true, 200, "application/vnd.apple.mpegurl", 0,
+                    best.bandwidth(), best.width(), best.height(), 0);
+        }
+        return new StreamProbe(url, StreamProbe.Kind.HLS_MEDIA, true, 200, "application/vnd.apple.mpegurl", 0,
+                0, 0, 0, playlist.totalDuration());
+    }
+
+    private static int kindRank(StreamProbe.Kind kind) {
+        return switch (kind) {
+            case HLS_MASTER -> 0;
+            case HLS_MEDIA -> 1;
+            case MP4 -> 2;
+            case TS -> 3;
+            default -> 4;
+        };
+    }
+
+    private record CachedProbe(CompletableFuture<StreamProbe> probe, long expiresAt) {}
+}
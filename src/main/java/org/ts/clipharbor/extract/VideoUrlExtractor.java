@@ -0,0 +1,81 @@
+package org.ts.clipharbor.extract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds absolute {@code .mp4}, {@code .m3u8} and {@code .ts} URLs in script and JSON text. This is
+ * a single forward pass equivalent to the regex {@code https?:\\?/\\?/[^"'\s]+\.(mp4|m3u8|ts)}: for
+ * each URL start the longest run of non-delimiter characters is taken and cut back to the last
+ * media extension in it. JSON-escaped slashes are unescaped only when a backslash is present.
+ */
+public class VideoUrlExtractor {
+
+    private static final String[] EXTENSIONS = {".mp4", ".m3u8", ".ts"};
+
+    private final DomainFilter blockedDomains;
+
+    public VideoUrlExtractor(DomainFilter blockedDomains) {
+        this.blockedDomains = blockedDomains;
+    }
+
+    public List<String> extract(String text) {
+        List<String> found = new ArrayList<>();
+        int n = text.length();
+        int from = 0;
+        int start;
+        while ((start = text.indexOf("http", from)) >= 0) {
+            int body = schemeEnd(text, start);
+            if (body < 0) {
+                from = start + 1;
+                continue;
+            }
+            int runEnd = body;
+            while (runEnd < n && !isDelimiter(text.charAt(runEnd))) runEnd++;
+
+            int end = lastExtensionEnd(text, body, runEnd);
+            if (end < 0) {
+                // No later start inside this run can end in an extension either.
+                from = Math.max(runEnd, start + 1);
+                continue;
+            }
+            String url = text.substring(start, end);
+            if (url.indexOf('\\') >= 0) url = url.replace("\\/", "/");
+            if (!blockedDomains.matches(url)) found.add(url);
+            from = end;
+        }
+        return found;
+    }
+
+    // Returns the index just past "http(s)://" (slashes optionally backslash-escaped), or -1.
+    private static int schemeEnd(String text, int start) {
+        int p = start + 4;
+        int n = text.length();
+        if (p < n && text.charAt(p) == 's') p++;
+        if (p >= n || text.charAt(p) != ':') return -1;
+        p++;
+        for (int slash = 0; slash < 2; slash++) {
+            if (p < n && text.charAt(p) == '\\') p++;
+            if (p >= n || text.charAt(p) != '/') return -1;
+            p++;
+        }
+        return p;
+    }
+
+    // At least one character has to precede the dot, matching the "+" in the regex.
+    private static int lastExtensionEnd(String text, int body, int runEnd) {
+        for (int end = runEnd; end > body + 2; end--) {
+            char last = text.charAt(end - 1);
+            if (last != '4' && last != '8' && last != 's') continue;
+            for (String ext : EXTENSIONS) {
+                int dot = end - ext.length();
+                if (dot > body && text.startsWith(ext, dot)) return end;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '"' || c == '\'' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,56 @@
+package org.ts.clipharbor.hls;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An {@code #EXT-X-KEY} tag. {@code iv} is {@code null} when the tag has no IV attribute, in which
+ * case AES-128 uses the segment's media sequence number as the IV.
+ */
+public record HlsKey(String method, String uri, byte[] iv, String keyFormat) {
+
+    public static final String NONE = "NONE";
+    public static final String AES_128 = "AES-128";
+
+    static HlsKey fromAttributes(URI base, Map<String, String> attrs) {
+        String method = attrs.getOrDefault("METHOD", NONE).toUpperCase(Locale.ROOT);
+        String uri = attrs.get("URI");
+        return new HlsKey(method, uri == null ? null : HlsParser.resolve(base, uri),
+                parseIv(attrs.get("IV")), attrs.getOrDefault("KEYFORMAT", "identity"));
+    }
+
+    public boolean isNone() {
+        return NONE.equals(method);
+    }
+
+    public boolean isIdentity() {
+        return "identity".equals(keyFormat);
+    }
+
+    /** The 16-byte IV for a segment with the given media sequence number. */
+    public byte[] ivFor(long sequence) {
+        if (iv != null) return iv.clone();
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[15 - i] = (byte) (sequence >>> (8 * i));
+        }
+        return bytes;
+    }
+
+    private static byte[] parseIv(String value) {
+        if (value == null) return null;
+        String hex = value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value;
+        if (hex.isEmpty() || hex.length() > 32) return null;
+        hex = "0".repeat(32 - hex.length()) + hex;
+        byte[] bytes = new byte[16];
+        try {
+            for (int i = 0; i < 16; i++) {
+                bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,14 @@
+package org.ts.clipharbor.hls;
+
+/**
+ * An {@code #EXT-X-MAP} tag: the init section that precedes the segments of a fragmented MP4
+ * stream. {@code length} is {@code -1} when the tag has no BYTERANGE and the whole resource is the
+ * init section.
+ */
+public record HlsMap(String uri, long offset, long length) {
+
+    /** The value for a {@code Range} header, or {@code null} when the whole resource is wanted. */
+    public String rangeHeader() {
+        return length < 0 ? null : "bytes=" + offset + "-" + (offset + length - 1);
+    }
+}
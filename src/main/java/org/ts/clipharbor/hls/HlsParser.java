@@ -0,0 +1,183 @@
+package org.ts.clipharbor.hls;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Parses master and media playlists. Relative URIs are resolved against the playlist's own URI.
+ * A master written without {@code #EXT-X-STREAM-INF} tags, listing child playlists as bare lines,
+ * is still read as a master with one variant of unknown bandwidth per line. Each segment carries
+ * its media sequence number and the {@code #EXT-X-KEY} and {@code #EXT-X-MAP} in force for it.
+ * Audio renditions declared with {@code #EXT-X-MEDIA} are kept on the master.
+ */
+public final class HlsParser {
+
+    private HlsParser() {
+    }
+
+    public static HlsPlaylist parse(URI base, String text) {
+        List<HlsVariant> variants = new ArrayList<>();
+        List<HlsRendition> audio = new ArrayList<>();
+        List<HlsSegment> segments = new ArrayList<>();
+        long mediaSequence = 0;
+        boolean endList = false;
+        Map<String, String> pendingStreamInf = null;
+        double pendingDuration = -1;
+        HlsKey key = null;
+        HlsMap map = null;
+
+        for (String raw : text.split("\r?\n")) {
+            String line = raw.trim();
+            if (line.isEmpty()) continue;
+            if (line.startsWith("#")) {
+                if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                    pendingStreamInf = parseAttributes(line.substring("#EXT-X-STREAM-INF:".length()));
+                } else if (line.startsWith("#EXT-X-MEDIA:")) {
+                    HlsRendition rendition = toAudioRendition(base, parseAttributes(line.substring("#EXT-X-MEDIA:".length())));
+                    if (rendition != null) audio.add(rendition);
+                } else if (line.startsWith("#EXTINF:")) {
+                    pendingDuration = parseDuration(line.substring("#EXTINF:".length()));
+                } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                    mediaSequence = parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()));
+                } else if (line.startsWith("#EXT-X-KEY:")) {
+                    HlsKey parsed = HlsKey.fromAttributes(base, parseAttributes(line.substring("#EXT-X-KEY:".length())));
+                    // DRM systems add their own KEYFORMAT tags next to the identity one; keep the latter.
+                    if (parsed.isNone()) {
+                        key = null;
+                    } else if (parsed.isIdentity() || key == null || !key.isIdentity()) {
+                        key = parsed;
+                    }
+                } else if (line.startsWith("#EXT-X-MAP:")) {
+                    map = toMap(base, parseAttributes(line.substring("#EXT-X-MAP:".length())));
+                } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                    endList = true;
+                }
+                continue;
+            }
+
+            String uri = resolve(base, line);
+            if (pendingStreamInf != null) {
+                variants.add(toVariant(uri, pendingStreamInf));
+                pendingStreamInf = null;
+            } else if (pendingDuration < 0 && isPlaylistUri(line)) {
+                variants.add(new HlsVariant(uri, 0, 0, 0, 0, null, 0, null));
+            } else {
+                segments.add(new HlsSegment(uri, Math.max(pendingDuration, 0), mediaSequence + segments.size(), key, map));
+                pendingDuration = -1;
+            }
+        }
+        return new HlsPlaylist(base, List.copyOf(variants), List.copyOf(audio), List.copyOf(segments), mediaSequence, endList);
+    }
+
+    /** Splits an attribute list on commas that are not inside a quoted string. */
+    public static Map<String, String> parseAttributes(String list) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        int i = 0;
+        int n = list.length();
+        while (i < n) {
+            int eq = list.indexOf('=', i);
+            if (eq < 0) break;
+            String key = list.substring(i, eq).trim();
+            int j = eq + 1;
+            String value;
+            if (j < n && list.charAt(j) == '"') {
+                int close = list.indexOf('"', j + 1);
+                if (close < 0) close = n;
+                value = list.substring(j + 1, close);
+                j = close + 1;
+            } else {
+                int comma = list.indexOf(',', j);
+                if (comma < 0) comma = n;
+                value = list.substring(j, comma).trim();
+                j = comma;
+            }
+            attributes.put(key.toUpperCase(Locale.ROOT), value);
+            int comma = list.indexOf(',', j);
+            i = comma < 0 ? n : comma + 1;
+        }
+        return attributes;
+    }
+
+    private static HlsVariant toVariant(String uri, Map<String, String> attrs) {
+        int width = 0;
+        int height = 0;
+        String resolution = attrs.get("RESOLUTION");
+        if (resolution != null) {
+            int x = resolution.toLowerCase(Locale.ROOT).indexOf('x');
+            if (x > 0) {
+                width = (int) parseLong(resolution.substring(0, x));
+                height = (int) parseLong(resolution.substring(x + 1));
+            }
+        }
+        return new HlsVariant(uri,
+                parseLong(attrs.getOrDefault("BANDWIDTH", "0")),
+                parseLong(attrs.getOrDefault("AVERAGE-BANDWIDTH", "0")),
+                width, height,
+                attrs.get("CODECS"),
+                parseDouble(attrs.getOrDefault("FRAME-RATE", "0")),
+                attrs.get("AUDIO"));
+    }
+
+    private static HlsRendition toAudioRendition(URI base, Map<String, String> attrs) {
+        String groupId = attrs.get("GROUP-ID");
+        if (!"AUDIO".equals(attrs.get("TYPE")) || groupId == null) return null;
+        String uri = attrs.get("URI");
+        return new HlsRendition(groupId, attrs.getOrDefault("NAME", groupId), attrs.get("LANGUAGE"),
+                uri != null ? resolve(base, uri) : null,
+                "YES".equals(attrs.get("DEFAULT")), "YES".equals(attrs.get("AUTOSELECT")));
+    }
+
+    private static HlsMap toMap(URI base, Map<String, String> attrs) {
+        String uri = attrs.get("URI");
+        if (uri == null) return null;
+        long offset = 0;
+        long length = -1;
+        String range = attrs.get("BYTERANGE");
+        if (range != null) {
+            int at = range.indexOf('@');
+            length = parseLong(at < 0 ? range : range.substring(0, at));
+            if (at >= 0) offset = parseLong(range.substring(at + 1));
+            if (length <= 0) length = -1;
+        }
+        return new HlsMap(resolve(base, uri), offset, length);
+    }
+
+    static String resolve(URI base, String reference) {
+        try {
+            return base.resolve(reference.replace(" ", "%20")).toString();
+        } catch (IllegalArgumentException e) {
+            try {
+                return new java.net.URL(base.toURL(), reference).toString();
+            } catch (java.net.MalformedURLException | IllegalArgumentException ignored) {
+                return reference;
+            }
+        }
+    }
+
+    private static double parseDuration(String value) {
+        int comma = value.indexOf(',');
+        return parseDouble(comma < 0 ? value : value.substring(0, comma));
+    }
+
+    private static boolean isPlaylistUri(String line) {
+        String lower = line.toLowerCase(Locale.ROOT);
+        int query = lower.indexOf('?');
+        return (query < 0 ? lower : lower.substring(0, query)).endsWith(".m3u8");
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
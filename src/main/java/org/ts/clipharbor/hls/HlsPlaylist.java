@@ -0,0 +1,37 @@
+package org.ts.clipharbor.hls;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A parsed playlist. A master playlist has variants, possibly audio renditions, and no segments; a
+ * media playlist has segments and no variants.
+ */
+public record HlsPlaylist(URI uri, List<HlsVariant> variants, List<HlsRendition> audio, List<HlsSegment> segments,
+                          long mediaSequence, boolean endList) {
+
+    public boolean isMaster() {
+        return !variants.isEmpty();
+    }
+
+    /**
+     * The audio rendition a player would pick for {@code variant}: the default one of its group,
+     * else one marked for autoselection, else the first; {@code null} when it names no known group.
+     */
+    public HlsRendition audioFor(HlsVariant variant) {
+        if (variant.audioGroup() == null) return null;
+        HlsRendition chosen = null;
+        for (HlsRendition rendition : audio) {
+            if (!rendition.groupId().equals(variant.audioGroup())) continue;
+            if (rendition.isDefault()) return rendition;
+            if (chosen == null || (rendition.autoselect() && !chosen.autoselect())) chosen = rendition;
+        }
+        return chosen;
+    }
+
+    public double totalDuration() {
+        double total = 0;
+        for (HlsSegment segment : segments) total += segment.duration();
+        return total;
+    }
+}
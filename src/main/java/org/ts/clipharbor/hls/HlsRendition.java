@@ -0,0 +1,14 @@
+package org.ts.clipharbor.hls;
+
+/**
+ * One {@code #EXT-X-MEDIA} audio entry of a master playlist. {@code uri} is {@code null} when the
+ * audio is carried in the variant's own stream rather than in a playlist of its own.
+ */
+public record HlsRendition(String groupId, String name, String language, String uri, boolean isDefault,
+                           boolean autoselect) {
+
+    @Override
+    public String toString() {
+        return name + (language != null ? " (" + language + ")" : "");
+    }
+}
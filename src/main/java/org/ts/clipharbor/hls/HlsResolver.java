@@ -0,0 +1,217 @@
+package org.ts.clipharbor.hls;
+
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HttpService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a playlist URL into the single media playlist to download. Master playlists are reduced to
+ * one variant: the best-ranked one is fetched together with the next candidate in parallel, so a
+ * failing rendition falls back without another round trip. Variants whose audio is demuxed into a
+ * separate rendition are only chosen when no variant carries its own, and then that rendition's
+ * playlist is resolved too. Fetched playlists are cached for a short TTL and concurrent requests for
+ * the same URL share one fetch.
+ */
+public class HlsResolver {
+
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(30);
+
+    private static final int MAX_DEPTH = 4;
+    private static final int PARALLEL_CANDIDATES = 2;
+    private static final int MAX_CACHED = 256;
+
+    private final HttpService http;
+    private final Duration cacheTtl;
+    private final Log log;
+    private final ConcurrentHashMap<String, CachedPlaylist> cache = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public HlsResolver(HttpService http, Duration cacheTtl, Log log) {
+        this.http = http;
+        this.cacheTtl = cacheTtl;
+        this.log = log;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "hls-playlist-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Resolves {@code playlistUrl} down to one media playlist, choosing a variant at each master. */
+    public ResolvedStream resolve(String playlistUrl) throws IOException {
+        return resolve(playlistUrl, null, 0);
+    }
+
+    /** Fetches and parses a playlist, served from the cache while it is fresh. */
+    public CompletableFuture<HlsPlaylist> fetch(String playlistUrl) {
+        long now = System.nanoTime();
+        if (cache.size() > MAX_CACHED) cache.values().removeIf(e -> e.expiresAt - now <= 0);
+        CachedPlaylist entry = cache.compute(playlistUrl, (url, existing) -> {
+            if (existing != null && existing.expiresAt - now > 0 && !existing.playlist.isCompletedExceptionally()) {
+                return existing;
+            }
+            CompletableFuture<HlsPlaylist> future = CompletableFuture.supplyAsync(() -> load(url), executor);
+            return new CachedPlaylist(future, now + cacheTtl.toNanos());
+        });
+        return entry.playlist;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ResolvedStream resolve(String playlistUrl, HlsVariant variant, int depth) throws IOException {
+        HlsPlaylist playlist = await(fetch(playlistUrl));
+        if (!playlist.isMaster()) {
+            log.debug(() -> "Media playlist: " + playlist.segments().size() + " segments, "
+                    + Math.round(playlist.totalDuration()) + " s");
+            return new ResolvedStream(variant, playlist, List.of(), null);
+        }
+        if (depth >= MAX_DEPTH) throw new IOException("Playlist nesting too deep at " + playlistUrl);
+
+        List<HlsVariant> ranked = rank(playlist);
+        log.debug(() -> "Master playlist with " + ranked.size() + " variants, best: " + ranked.get(0));
+        for (int i = 0; i < Math.min(PARALLEL_CANDIDATES, ranked.size()); i++) {
+            fetch(ranked.get(i).uri());
+        }
+
+        IOException last = null;
+        for (HlsVariant candidate : ranked) {
+            try {
+                ResolvedStream stream = resolve(candidate.uri(), candidate, depth + 1);
+                return stream.variant() == candidate ? withAudio(withMirrors(stream, ranked), playlist) : stream;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                log.warn("Variant " + candidate + " failed: " + e.getMessage());
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    // Redundant streams repeat a variant's attributes under another URI, usually on another CDN.
+    private ResolvedStream withMirrors(ResolvedStream stream, List<HlsVariant> ranked) {
+        HlsVariant chosen = stream.variant();
+        List<CompletableFuture<HlsPlaylist>> pending = new ArrayList<>();
+        for (HlsVariant v : ranked) {
+            if (v != chosen && !v.uri().equals(chosen.uri()) && v.sameRendition(chosen)) pending.add(fetch(v.uri()));
+        }
+        if (pending.isEmpty()) return stream;
+
+        int segments = stream.playlist().segments().size();
+        List<HlsPlaylist> mirrors = new ArrayList<>();
+        for (CompletableFuture<HlsPlaylist> future : pending) {
+            try {
+                HlsPlaylist mirror = await(future);
+                if (!mirror.isMaster() && mirror.segments().size() == segments) mirrors.add(mirror);
+            } catch (IOException e) {
+                log.debug(() -> "Redundant stream unavailable: " + e.getMessage());
+            }
+        }
+        log.debug(() -> mirrors.size() + " redundant stream(s) for " + chosen);
+        return new ResolvedStream(chosen, stream.playlist(), mirrors, null);
+    }
+
+    // Without its audio rendition a demuxed variant downloads as silent video.
+    private ResolvedStream withAudio(ResolvedStream stream, HlsPlaylist master) throws InterruptedIOException {
+        HlsVariant chosen = stream.variant();
+        HlsRendition rendition = master.audioFor(chosen);
+        if (rendition == null || rendition.uri() == null) {
+            if (chosen.codecs() != null && !chosen.hasAudioCodec() && chosen.audioGroup() == null) {
+                log.warn("Variant " + chosen + " has no audio track");
+            }
+            return stream;
+        }
+        try {
+            HlsPlaylist audio = await(fetch(rendition.uri()));
+            if (audio.isMaster() || audio.segments().isEmpty()) throw new IOException("not a media playlist");
+            log.info("Audio is a separate rendition: " + rendition);
+            return new ResolvedStream(chosen, stream.playlist(), stream.mirrors(), audio);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            log.warn("Audio rendition " + rendition + " unavailable (" + e.getMessage()
+                    + "), the video will be silent");
+        }
+        return stream;
+    }
+
+    /**
+     * Orders the variants of a master best first: those carrying their own audio, then those with
+     * a separate audio rendition, then those without audio; within each, by bandwidth, then
+     * resolution, then frame rate.
+     */
+    public static List<HlsVariant> rank(HlsPlaylist master) {
+        List<HlsVariant> ranked = new ArrayList<>(master.variants());
+        ranked.sort(Comparator.comparingInt((HlsVariant v) -> audioRank(master, v))
+                .thenComparing(Comparator.comparingLong(HlsVariant::bandwidth)
+                        .thenComparingLong(v -> (long) v.width() * v.height())
+                        .thenComparingDouble(HlsVariant::frameRate)
+                        .reversed()));
+        return ranked;
+    }
+
+    // Without CODECS nothing is known, so the variant is taken to carry its audio as most do.
+    private static int audioRank(HlsPlaylist master, HlsVariant variant) {
+        HlsRendition rendition = master.audioFor(variant);
+        if (rendition != null && rendition.uri() != null) return 1;
+        if (rendition != null || variant.codecs() == null || variant.hasAudioCodec()) return 0;
+        return 2;
+    }
+
+    private HlsPlaylist load(String playlistUrl) {
+        try {
+            HttpService.TextResource resource = http.getText(playlistUrl);
+            return HlsParser.parse(resource.uri(), resource.text());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static HlsPlaylist await(CompletableFuture<HlsPlaylist> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching playlist");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Playlist fetch failed", cause);
+        }
+    }
+
+    private record CachedPlaylist(CompletableFuture<HlsPlaylist> playlist, long expiresAt) {}
+
+    /**
+     * The chosen variant ({@code null} when the URL was already a media playlist), its playlist, the
+     * playlists of redundant streams carrying the same segments, and the playlist of its separate
+     * audio rendition ({@code null} when the audio is in the stream or there is none).
+     */
+    public record ResolvedStream(HlsVariant variant, HlsPlaylist playlist, List<HlsPlaylist> mirrors,
+                                 HlsPlaylist audio) {
+
+        public List<HlsSegment> segments() {
+            return playlist.segments();
+        }
+
+        public List<List<HlsSegment>> mirrorSegments() {
+            List<List<HlsSegment>> segments = new ArrayList<>(mirrors.size());
+            for (HlsPlaylist mirror : mirrors) segments.add(mirror.segments());
+            return segments;
+        }
+
+        public URI uri() {
+            return playlist.uri();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.ts.clipharbor.hls;
+
+/**
+ * One media segment: its absolute URI, its {@code #EXTINF} duration in seconds and its media
+ * sequence number. {@code key} is the {@code #EXT-X-KEY} in force for the segment and {@code map}
+ * its {@code #EXT-X-MAP} init section; either is {@code null} when the playlist has none.
+ */
+public record HlsSegment(String uri, double duration, long sequence, HlsKey key, HlsMap map) {
+
+    public HlsSegment(String uri, double duration) {
+        this(uri, duration, 0, null, null);
+    }
+
+    public boolean isEncrypted() {
+        return key != null && !key.isNone();
+    }
+}
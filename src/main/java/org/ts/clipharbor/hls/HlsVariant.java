@@ -0,0 +1,39 @@
+package org.ts.clipharbor.hls;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * One {@code #EXT-X-STREAM-INF} entry of a master playlist. Unknown numeric attributes are 0;
+ * {@code audioGroup} names the {@code #EXT-X-MEDIA} group its audio comes from, if any.
+ */
+public record HlsVariant(String uri, long bandwidth, long averageBandwidth, int width, int height,
+                         String codecs, double frameRate, String audioGroup) {
+
+    private static final String[] AUDIO_CODECS = {"mp4a", "ac-3", "ec-3", "opus", "flac", "alac"};
+
+    public String resolution() {
+        return width > 0 && height > 0 ? width + "x" + height : "unknown";
+    }
+
+    /** Whether CODECS lists an audio codec; {@code false} when the attribute is missing. */
+    public boolean hasAudioCodec() {
+        if (codecs == null) return false;
+        String lower = codecs.toLowerCase(Locale.ROOT);
+        for (String codec : AUDIO_CODECS) {
+            if (lower.contains(codec)) return true;
+        }
+        return false;
+    }
+
+    /** Whether {@code other} describes the same rendition, as redundant streams do. */
+    public boolean sameRendition(HlsVariant other) {
+        return bandwidth == other.bandwidth && width == other.width && height == other.height
+                && Objects.equals(codecs, other.codecs);
+    }
+
+    @Override
+    public String toString() {
+        return resolution() + " @ " + bandwidth / 1000 + " kbps" + (codecs != null ? " [" + codecs + "]" : "");
+    }
+}
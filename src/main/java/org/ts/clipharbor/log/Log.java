@@ -0,0 +1,60 @@
+package org.ts.clipharbor.log;
+
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+/**
+ * Leveled log sink passed to the engine components. Debug messages are taken as suppliers and only
+ * built when the sink accepts {@link LogLevel#DEBUG}, so per-segment and per-request tracing costs a
+ * single level check while it is switched off.
+ */
+public interface Log {
+
+    /** Discards everything. */
+    Log NONE = new Log() {
+        @Override
+        public boolean isEnabled(LogLevel level) {
+            return false;
+        }
+
+        @Override
+        public void write(LogLevel level, String message) {
+        }
+    };
+
+    boolean isEnabled(LogLevel level);
+
+    /** Records a message that has already passed {@link #isEnabled}. */
+    void write(LogLevel level, String message);
+
+    default void debug(Supplier<String> message) {
+        if (isEnabled(LogLevel.DEBUG)) write(LogLevel.DEBUG, message.get());
+    }
+
+    default void info(String message) {
+        if (isEnabled(LogLevel.INFO)) write(LogLevel.INFO, message);
+    }
+
+    default void warn(String message) {
+        if (isEnabled(LogLevel.WARN)) write(LogLevel.WARN, message);
+    }
+
+    default void error(String message) {
+        if (isEnabled(LogLevel.ERROR)) write(LogLevel.ERROR, message);
+    }
+
+    /** Prints entries at or above {@code threshold} to the given stream, one line each. */
+    static Log to(PrintStream out, LogLevel threshold) {
+        return new Log() {
+            @Override
+            public boolean isEnabled(LogLevel level) {
+                return threshold.includes(level);
+            }
+
+            @Override
+            public void write(LogLevel level, String message) {
+                out.println(new LogEntry(System.currentTimeMillis(), level, message));
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package org.ts.clipharbor.log;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Thread-safe {@link Log} that only queues entries; a consumer such as the UI drains them in batches
+ * at its own pace. The queue is a ring of at most {@code capacity} entries, so a burst between two
+ * drains keeps the newest messages and counts the rest as dropped instead of growing without bound.
+ * The threshold can be changed at any time and applies to messages logged afterwards.
+ */
+public class LogBuffer implements Log {
+
+    public static final int DEFAULT_CAPACITY = 2_000;
+
+    private final int capacity;
+    private final ArrayDeque<LogEntry> entries;
+    private volatile LogLevel threshold;
+    private long dropped;
+
+    public LogBuffer(int capacity, LogLevel threshold) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.capacity = capacity;
+        this.entries = new ArrayDeque<>(Math.min(capacity, 256));
+        this.threshold = threshold;
+    }
+
+    public LogLevel threshold() {
+        return threshold;
+    }
+
+    public void setThreshold(LogLevel threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isEnabled(LogLevel level) {
+        return threshold.includes(level);
+    }
+
+    @Override
+    public void write(LogLevel level, String message) {
+        LogEntry entry = new LogEntry(System.currentTimeMillis(), level, message);
+        synchronized (entries) {
+            if (entries.size() == capacity) {
+                entries.pollFirst();
+                dropped++;
+            }
+            entries.addLast(entry);
+        }
+    }
+
+    /**
+     * Moves all queued entries into {@code sink} and returns how many entries were dropped since the
+     * previous drain because the ring was full.
+     */
+    public long drainTo(Collection<? super LogEntry> sink) {
+        synchronized (entries) {
+            sink.addAll(entries);
+            entries.clear();
+            long lost = dropped;
+            dropped = 0;
+            return lost;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.ts.clipharbor.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/** One recorded message. The timestamp is only formatted when the entry is displayed. */
+public record LogEntry(long timeMillis, LogLevel level, String message) {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    @Override
+    public String toString() {
+        return "[" + TIME.format(Instant.ofEpochMilli(timeMillis)) + "] [" + level + "] " + message;
+    }
+}
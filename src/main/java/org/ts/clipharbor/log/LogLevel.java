@@ -0,0 +1,10 @@
+package org.ts.clipharbor.log;
+
+/** Severity of a log message, in increasing order. */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR;
+
+    public boolean includes(LogLevel other) {
+        return other.compareTo(this) >= 0;
+    }
+}
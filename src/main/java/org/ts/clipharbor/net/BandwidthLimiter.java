@@ -0,0 +1,81 @@
+package org.ts.clipharbor.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares download bandwidth out under three limits: one for the whole process, one per host and
+ * one per job, each a {@link TokenBucket}. A job's {@link Throttle} draws from all three and waits
+ * for the slowest. A limit of {@code 0} means unlimited.
+ */
+public class BandwidthLimiter {
+
+    /** Byte-per-second limits; {@code 0} leaves that level unlimited. */
+    public record Limits(long globalBytesPerSecond, long perHostBytesPerSecond, long perJobBytesPerSecond) {
+
+        public static final Limits UNLIMITED = new Limits(0, 0, 0);
+
+        public Limits {
+            if (globalBytesPerSecond < 0 || perHostBytesPerSecond < 0 || perJobBytesPerSecond < 0) {
+                throw new IllegalArgumentException("limits must be >= 0");
+            }
+        }
+
+        public boolean isUnlimited() {
+            return globalBytesPerSecond == 0 && perHostBytesPerSecond == 0 && perJobBytesPerSecond == 0;
+        }
+    }
+
+    private final Limits limits;
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> hosts = new ConcurrentHashMap<>();
+
+    public BandwidthLimiter(Limits limits) {
+        this.limits = limits;
+        this.global = limits.globalBytesPerSecond() > 0 ? new TokenBucket(limits.globalBytesPerSecond()) : null;
+    }
+
+    public Limits limits() {
+        return limits;
+    }
+
+    /** A throttle for one new job downloading from {@code host}. */
+    public Throttle forJob(String host) {
+        List<TokenBucket> buckets = new ArrayList<>(3);
+        if (limits.perJobBytesPerSecond() > 0) buckets.add(new TokenBucket(limits.perJobBytesPerSecond()));
+        if (limits.perHostBytesPerSecond() > 0 && host != null) {
+            buckets.add(hosts.computeIfAbsent(host, h -> new TokenBucket(limits.perHostBytesPerSecond())));
+        }
+        if (global != null) buckets.add(global);
+        if (buckets.isEmpty()) return Throttle.NONE;
+        if (buckets.size() == 1) return buckets.get(0);
+        return bytes -> {
+            long wait = 0;
+            for (TokenBucket bucket : buckets) wait = Math.max(wait, bucket.take(bytes));
+            TokenBucket.sleep(wait);
+        };
+    }
+
+    /**
+     * Parses a rate such as {@code 500k}, {@code 2M} or {@code 1.5m} in bytes per second, with
+     * binary multiples; {@code 0} means unlimited.
+     */
+    public static long parseRate(String value) {
+        String v = value.trim();
+        long multiplier = 1;
+        if (!v.isEmpty()) {
+            switch (Character.toLowerCase(v.charAt(v.length() - 1))) {
+                case 'k' -> multiplier = 1024;
+                case 'm' -> multiplier = 1024 * 1024;
+                case 'g' -> multiplier = 1024 * 1024 * 1024;
+                default -> multiplier = 0;
+            }
+            if (multiplier != 0) v = v.substring(0, v.length() - 1);
+        }
+        double number = Double.parseDouble(v);
+        if (number < 0 || Double.isNaN(number)) throw new NumberFormatException("negative rate: " + value);
+        return Math.round(number * Math.max(multiplier, 1));
+    }
+}
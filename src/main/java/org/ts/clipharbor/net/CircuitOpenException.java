@@ -0,0 +1,11 @@
+package org.ts.clipharbor.net;
+
+import java.io.IOException;
+
+/** Thrown when a host has kept failing and its circuit breaker stayed open for longer than allowed. */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String host) {
+        super("Giving up on " + host + ": too many consecutive failures");
+    }
+}
@@ -0,0 +1,161 @@
+package org.ts.clipharbor.net;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-host failure and latency bookkeeping shared by all requests of one {@link HttpService}.
+ *
+ * <p>After {@code failureThreshold} consecutive failures a host's circuit opens and callers are
+ * held back for a cooldown that doubles each time the host fails again, up to
+ * {@code maxOpenDuration}. When the cooldown ends one probe request is let through; its outcome
+ * closes or reopens the circuit.
+ *
+ * <p>Time to response headers is smoothed the way TCP estimates round-trip time, and the request
+ * timeout for a host is that estimate plus four deviations, kept between {@code minTimeout} and the
+ * configured maximum. A host that answers in 200 ms is no longer given 30 s to stall.
+ *
+ * <p>Cooldowns are measured on an injectable nanosecond clock, so tests can step through the circuit
+ * states together with a fake {@link Retrier.Sleeper}.
+ */
+public class HostHealth {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_MAX_OPEN_DURATION = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_MIN_TIMEOUT = Duration.ofSeconds(5);
+
+    // How long other callers wait while a half-open probe is in flight before checking again.
+    private static final long PROBE_WAIT_NANOS = 250_000_000L;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long maxOpenNanos;
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    public HostHealth(int failureThreshold, Duration openDuration, Duration maxOpenDuration,
+                      Duration minTimeout, Duration maxTimeout) {
+        this(failureThreshold, openDuration, maxOpenDuration, minTimeout, maxTimeout, System::nanoTime);
+    }
+
+    public HostHealth(int failureThreshold, Duration openDuration, Duration maxOpenDuration,
+                      Duration minTimeout, Duration maxTimeout, LongSupplier clock) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be >= 1");
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.maxOpenNanos = maxOpenDuration.toNanos();
+        this.minTimeoutNanos = minTimeout.toNanos();
+        this.maxTimeoutNanos = Math.max(minTimeout.toNanos(), maxTimeout.toNanos());
+        this.clock = clock;
+    }
+
+    public HostHealth(Duration maxTimeout) {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION, DEFAULT_MAX_OPEN_DURATION, DEFAULT_MIN_TIMEOUT, maxTimeout);
+    }
+
+    /**
+     * Asks to send a request to {@code host}. Returns {@link Duration#ZERO} when the request may go
+     * ahead, otherwise how long to wait before asking again.
+     */
+    public Duration acquire(String host) {
+        Host h = host(host);
+        long now = clock.getAsLong();
+        synchronized (h) {
+            switch (h.state) {
+                case CLOSED:
+                    return Duration.ZERO;
+                case OPEN:
+                    if (now - h.openUntil < 0) return Duration.ofNanos(h.openUntil - now);
+                    h.state = State.HALF_OPEN;
+                    h.probeInFlight = true;
+                    return Duration.ZERO;
+                default:
+                    if (h.probeInFlight) return Duration.ofNanos(PROBE_WAIT_NANOS);
+                    h.probeInFlight = true;
+                    return Duration.ZERO;
+            }
+        }
+    }
+
+    public void recordSuccess(String host, long latencyNanos) {
+        Host h = host(host);
+        synchronized (h) {
+            h.state = State.CLOSED;
+            h.failures = 0;
+            h.cooldown = openNanos;
+            h.probeInFlight = false;
+            if (h.srtt == 0) {
+                h.srtt = latencyNanos;
+                h.rttvar = latencyNanos / 2;
+            } else {
+                h.rttvar += (Math.abs(h.srtt - latencyNanos) - h.rttvar) / 4;
+                h.srtt += (latencyNanos - h.srtt) / 8;
+            }
+        }
+    }
+
+    /** Ends a call that neither succeeded nor failed in a way that says anything about the host. */
+    public void release(String host) {
+        Host h = host(host);
+        synchronized (h) {
+            h.probeInFlight = false;
+        }
+    }
+
+    /** Returns {@code true} if this failure opened (or reopened) the host's circuit. */
+    public boolean recordFailure(String host) {
+        Host h = host(host);
+        long now = clock.getAsLong();
+        synchronized (h) {
+            h.failures++;
+            h.probeInFlight = false;
+            if (h.state == State.HALF_OPEN) {
+                h.cooldown = Math.min(maxOpenNanos, h.cooldown * 2);
+            } else if (h.state == State.OPEN || h.failures < failureThreshold) {
+                return false;
+            }
+            h.state = State.OPEN;
+            h.openUntil = now + h.cooldown;
+            return true;
+        }
+    }
+
+    /** Request timeout for {@code host}, or the configured maximum until a latency has been observed. */
+    public Duration timeoutFor(String host) {
+        Host h = hosts.get(host);
+        if (h == null) return Duration.ofNanos(maxTimeoutNanos);
+        synchronized (h) {
+            if (h.srtt == 0) return Duration.ofNanos(maxTimeoutNanos);
+            long timeout = h.srtt + 4 * h.rttvar;
+            return Duration.ofNanos(Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, timeout)));
+        }
+    }
+
+    public Duration maxTimeout() {
+        return Duration.ofNanos(maxTimeoutNanos);
+    }
+
+    private Host host(String host) {
+        return hosts.computeIfAbsent(host, k -> new Host(openNanos));
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final class Host {
+        State state = State.CLOSED;
+        int failures;
+        long openUntil;
+        long cooldown;
+        boolean probeInFlight;
+        long srtt;
+        long rttvar;
+
+        Host(long cooldown) {
+            this.cooldown = cooldown;
+        }
+    }
+}
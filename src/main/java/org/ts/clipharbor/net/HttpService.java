@@ -0,0 +1,275 @@
+package org.ts.clipharbor.net;
+
+import org.ts.clipharbor.log.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The one HTTP client every fetch goes through. A single {@link HttpClient} keeps connections
+ * alive between requests and negotiates HTTP/2 where the server offers it, so consecutive page,
+ * playlist and segment requests to the same host share connections instead of paying a TCP and
+ * TLS handshake each. Text fetches ask for gzip; media fetches do not, so byte offsets stay valid.
+ * Requests are repeated through a {@link Retrier}, with the timeout of each attempt taken from the
+ * latency observed for its host.
+ */
+public class HttpService {
+
+    public static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64)";
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(15);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final String userAgent;
+    private final Duration requestTimeout;
+    private final Retrier retrier;
+
+    public HttpService(Duration connectTimeout, Duration requestTimeout, String userAgent) {
+        this(connectTimeout, requestTimeout, userAgent,
+                new Retrier(RetryPolicy.NONE, new HostHealth(requestTimeout), Log.NONE));
+    }
+
+    public HttpService(Duration connectTimeout, Duration requestTimeout, String userAgent, Retrier retrier) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.userAgent = userAgent;
+        this.requestTimeout = requestTimeout;
+        this.retrier = retrier;
+    }
+
+    public static HttpService create(RetryPolicy retryPolicy, Log log) {
+        return new HttpService(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_USER_AGENT,
+                new Retrier(retryPolicy, new HostHealth(DEFAULT_REQUEST_TIMEOUT), log));
+    }
+
+    public Retrier retrier() {
+        return retrier;
+    }
+
+    /** A GET request for {@code url} carrying the shared user agent and timeout. */
+    public HttpRequest.Builder request(String url) {
+        return request(URI.create(url));
+    }
+
+    public HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("User-Agent", userAgent);
+    }
+
+    /**
+     * Sends {@code request}, retrying failures and retryable statuses. A response with a retryable
+     * status is only returned once the attempts are used up.
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        return send(request, handler, true);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler, boolean waitForCircuit)
+            throws IOException {
+        try {
+            return retrier.call(request.uri(), waitForCircuit, attempt -> sendOnce(request, handler, attempt));
+        } catch (HttpStatusException e) {
+            if (e.response() == null) throw e;
+            @SuppressWarnings("unchecked")
+            HttpResponse<T> response = (HttpResponse<T>) e.response();
+            return response;
+        }
+    }
+
+    /**
+     * One attempt of {@code request}, for callers that retry a larger unit of work themselves through
+     * {@link #retrier()}. The timeout adapts to the host's observed latency and doubles with each
+     * further attempt. A retryable status is thrown as {@link HttpStatusException} after the body is
+     * closed; the time to response headers is recorded for the host otherwise.
+     */
+    public <T> HttpResponse<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> handler, int attempt)
+            throws IOException {
+        return sendOnce(request, handler, attempt, false);
+    }
+
+    /**
+     * Like {@link #sendOnce(HttpRequest, HttpResponse.BodyHandler, int)} for a request with a
+     * {@code Range} header whose caller can only use {@code 206 Partial Content}. Any other
+     * non-retryable answer is closed and thrown as {@link RangeNotSatisfiedException} without
+     * counting as a success for the host.
+     */
+    public <T> HttpResponse<T> sendRangeOnce(HttpRequest request, HttpResponse.BodyHandler<T> handler, int attempt)
+            throws IOException {
+        return sendOnce(request, handler, attempt, true);
+    }
+
+    private <T> HttpResponse<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> handler, int attempt,
+                                         boolean partialOnly) throws IOException {
+        String host = Retrier.hostOf(request.uri());
+        HostHealth health = retrier.health();
+        Duration timeout = health.timeoutFor(host).multipliedBy(1L << Math.min(attempt - 1, 3));
+        if (timeout.compareTo(health.maxTimeout()) > 0) timeout = health.maxTimeout();
+        HttpRequest timed = HttpRequest.newBuilder(request, (name, value) -> true).timeout(timeout).build();
+
+        long start = System.nanoTime();
+        long[] headersAt = new long[1];
+        HttpResponse<T> response;
+        try {
+            response = client.send(timed, info -> {
+                headersAt[0] = System.nanoTime();
+                return handler.apply(info);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        }
+        if (RetryPolicy.isRetryableStatus(response.statusCode())) {
+            if (response.body() instanceof InputStream in) in.close();
+            throw new HttpStatusException(response.statusCode(), response.uri(), retryAfter(response), response);
+        }
+        if (partialOnly && response.statusCode() != 206) {
+            if (response.body() instanceof InputStream in) in.close();
+            health.release(host);
+            throw new RangeNotSatisfiedException(response.statusCode(), response.uri());
+        }
+        health.recordSuccess(host, headersAt[0] - start);
+        return response;
+    }
+
+    public HttpResponse<Void> head(String url) throws IOException {
+        return send(request(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * A single HEAD request that gives up after {@code timeout}, for lookups that are cheaper to skip
+     * than to repeat. It neither retries nor waits for the host's circuit, and leaves the host's
+     * health alone.
+     */
+    public HttpResponse<Void> headOnce(String url, Duration timeout) throws IOException {
+        HttpRequest request = request(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).timeout(timeout).build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+    }
+
+    /** Fetches a whole body into memory, failing on any non-2xx status. */
+    public byte[] getBytes(String url) throws IOException {
+        return getBytes(url, true);
+    }
+
+    /** Like {@link #getBytes(String)}; see {@link Retrier#call(URI, boolean, Retrier.Attempt)} for {@code waitForCircuit}. */
+    public byte[] getBytes(String url, boolean waitForCircuit) throws IOException {
+        return getBytes(url, waitForCircuit, Throttle.NONE);
+    }
+
+    /**
+     * Like {@link #getBytes(String, boolean)}, reading the body no faster than {@code throttle}
+     * allows. A body that breaks off is fetched again under the retry policy.
+     */
+    public byte[] getBytes(String url, boolean waitForCircuit, Throttle throttle) throws IOException {
+        if (throttle == Throttle.NONE) {
+            HttpResponse<byte[]> response = send(request(url).build(), HttpResponse.BodyHandlers.ofByteArray(),
+                    waitForCircuit);
+            requireSuccess(response);
+            return response.body();
+        }
+        HttpRequest request = request(url).build();
+        return retrier.call(request.uri(), waitForCircuit, attempt -> {
+            HttpResponse<InputStream> response = sendOnce(request, HttpResponse.BodyHandlers.ofInputStream(), attempt);
+            requireSuccess(response);
+            try (InputStream in = throttle.wrap(response.body())) {
+                return in.readAllBytes();
+            }
+        });
+    }
+
+    /** Fetches a page or playlist, accepting gzip, failing on any non-2xx status. */
+    public TextResource getText(String url) throws IOException {
+        HttpRequest request = request(url).header("Accept-Encoding", "gzip").build();
+        HttpResponse<byte[]> response = send(request, HttpResponse.BodyHandlers.ofByteArray());
+        requireSuccess(response);
+        return new TextResource(response.uri(), response.statusCode(), response.headers(), decode(response));
+    }
+
+    /**
+     * Like {@link #getText(String)}, sending the validators of an earlier fetch. A {@code 304 Not
+     * Modified} answer is returned with an empty body; either validator may be {@code null}.
+     */
+    public TextResource getTextIfModified(String url, String etag, String lastModified) throws IOException {
+        HttpRequest.Builder request = request(url).header("Accept-Encoding", "gzip");
+        if (etag != null) request.header("If-None-Match", etag);
+        if (lastModified != null) request.header("If-Modified-Since", lastModified);
+        HttpResponse<byte[]> response = send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 304) {
+            return new TextResource(response.uri(), 304, response.headers(), new byte[0]);
+        }
+        requireSuccess(response);
+        return new TextResource(response.uri(), response.statusCode(), response.headers(), decode(response));
+    }
+
+    public static void requireSuccess(HttpResponse<?> response) throws IOException {
+        int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            if (response.body() instanceof InputStream in) in.close();
+            throw new HttpStatusException(status, response.uri(), retryAfter(response));
+        }
+    }
+
+    // Only the delta-seconds form; an HTTP date is rare enough to fall back to normal backoff.
+    private static Duration retryAfter(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After")
+                    .map(v -> Duration.ofSeconds(Long.parseLong(v.trim())))
+                    .orElse(null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] decode(HttpResponse<byte[]> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(v -> v.toLowerCase(Locale.ROOT).contains("gzip"))
+                .orElse(false);
+        if (!gzip) return response.body();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** A decoded text body together with the final URI it was served from after redirects. */
+    public record TextResource(URI uri, int status, HttpHeaders headers, byte[] body) {
+
+        /** The charset named by Content-Type, or {@code null} when the server did not name one. */
+        public String charset() {
+            String type = headers.firstValue("Content-Type").orElse("");
+            for (String param : type.split(";")) {
+                String p = param.trim();
+                if (p.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    String name = p.substring(8).replace("\"", "").trim();
+                    if (Charset.isSupported(name)) return name;
+                }
+            }
+            return null;
+        }
+
+        public String text() {
+            String charset = charset();
+            return new String(body, charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8);
+        }
+    }
+}
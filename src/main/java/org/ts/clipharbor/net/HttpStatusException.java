@@ -0,0 +1,42 @@
+package org.ts.clipharbor.net;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+public class HttpStatusException extends IOException {
+
+    private final int status;
+    private final Duration retryAfter;
+    private final transient HttpResponse<?> response;
+
+    public HttpStatusException(int status, URI uri) {
+        this(status, uri, null);
+    }
+
+    public HttpStatusException(int status, URI uri, Duration retryAfter) {
+        this(status, uri, retryAfter, null);
+    }
+
+    HttpStatusException(int status, URI uri, Duration retryAfter, HttpResponse<?> response) {
+        super("Server returned HTTP " + status + " for " + uri);
+        this.status = status;
+        this.retryAfter = retryAfter;
+        this.response = response;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    /** The response that carried the status when it was raised by a retrying send, else {@code null}. */
+    HttpResponse<?> response() {
+        return response;
+    }
+
+    /** The delay the server asked for with {@code Retry-After}, or {@code null}. */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
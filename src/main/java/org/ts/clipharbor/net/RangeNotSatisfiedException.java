@@ -0,0 +1,23 @@
+package org.ts.clipharbor.net;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Thrown when a range request is answered with anything but {@code 206 Partial Content}, typically
+ * the whole body from a server that ignores {@code Range}. Asking again would get the same answer,
+ * so it is not retried.
+ */
+public class RangeNotSatisfiedException extends IOException {
+
+    private final int status;
+
+    public RangeNotSatisfiedException(int status, URI uri) {
+        super("Server answered " + status + " to a range request for " + uri);
+        this.status = status;
+    }
+
+    public int status() {
+        return status;
+    }
+}
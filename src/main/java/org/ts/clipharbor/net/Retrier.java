@@ -0,0 +1,119 @@
+package org.ts.clipharbor.net;
+
+import org.ts.clipharbor.log.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs a request under a {@link RetryPolicy}, consulting and updating the {@link HostHealth} of the
+ * target host. Each call retries on its own thread, so one failing segment or chunk backs off
+ * without holding up the others. The sleeper and random source are injectable so the timing can be
+ * driven deterministically against a stub server.
+ */
+public class Retrier {
+
+    /** One attempt of a call; {@code attempt} starts at 1. */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run(int attempt) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Sleeper {
+        Sleeper SYSTEM = duration -> Thread.sleep(duration.toMillis());
+
+        void sleep(Duration duration) throws InterruptedException;
+    }
+
+    private final RetryPolicy policy;
+    private final HostHealth health;
+    private final Sleeper sleeper;
+    private final Random random;
+    private final Log log;
+
+    public Retrier(RetryPolicy policy, HostHealth health, Sleeper sleeper, Random random, Log log) {
+        this.policy = policy;
+        this.health = health;
+        this.sleeper = sleeper;
+        this.random = random;
+        this.log = log;
+    }
+
+    public Retrier(RetryPolicy policy, HostHealth health, Log log) {
+        this(policy, health, Sleeper.SYSTEM, new Random(), log);
+    }
+
+    public RetryPolicy policy() {
+        return policy;
+    }
+
+    public HostHealth health() {
+        return health;
+    }
+
+    public <T> T call(URI uri, Attempt<T> attempt) throws IOException {
+        return call(uri, true, attempt);
+    }
+
+    /**
+     * Runs {@code attempt} until it succeeds, fails in a way that is not retryable, or runs out of
+     * attempts. With {@code waitForCircuit} false an open circuit fails the call at once with
+     * {@link CircuitOpenException}, for callers that have another source to turn to.
+     */
+    public <T> T call(URI uri, boolean waitForCircuit, Attempt<T> attempt) throws IOException {
+        String host = hostOf(uri);
+        long circuitWaitLeft = policy.maxCircuitWait().toNanos();
+        int n = 1;
+        while (true) {
+            Duration blocked = health.acquire(host);
+            if (!blocked.isZero()) {
+                if (!waitForCircuit || circuitWaitLeft <= 0) throw new CircuitOpenException(host);
+                Duration wait = Duration.ofNanos(Math.min(blocked.toNanos(), circuitWaitLeft));
+                circuitWaitLeft -= wait.toNanos();
+                pause(wait, uri);
+                continue;
+            }
+            try {
+                return attempt.run(n);
+            } catch (IOException e) {
+                if (!RetryPolicy.isRetryable(e)) {
+                    health.release(host);
+                    throw e;
+                }
+                if (health.recordFailure(host)) log.warn("Too many failures from " + host + ", pausing requests");
+                if (n >= policy.maxAttempts()) throw e;
+                Duration delay = policy.delay(n, random);
+                if (e instanceof HttpStatusException status && status.retryAfter() != null
+                        && status.retryAfter().compareTo(delay) > 0) {
+                    delay = status.retryAfter().compareTo(policy.maxDelay()) > 0 ? policy.maxDelay() : status.retryAfter();
+                }
+                int failed = n;
+                Duration wait = delay;
+                log.debug(() -> "Attempt " + failed + " for " + uri + " failed (" + e.getMessage()
+                        + "), retrying in " + wait.toMillis() + " ms");
+                pause(delay, uri);
+                n++;
+            }
+        }
+    }
+
+    private void pause(Duration delay, URI uri) throws IOException {
+        if (delay.isZero()) return;
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + uri);
+        }
+    }
+
+    static String hostOf(URI uri) {
+        String host = uri.getHost();
+        return host == null ? "" : host.toLowerCase(Locale.ROOT);
+    }
+}
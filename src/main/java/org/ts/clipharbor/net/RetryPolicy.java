@@ -0,0 +1,50 @@
+package org.ts.clipharbor.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * How often and how patiently a failed request is repeated. Delays grow exponentially from
+ * {@code baseDelay} up to {@code maxDelay} with full jitter, so workers that failed together do not
+ * come back together. {@code maxCircuitWait} bounds the time one call may spend waiting for a
+ * host's circuit breaker to let it through; those waits do not use up attempts.
+ */
+public record RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration maxCircuitWait) {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, Duration.ofMillis(500), Duration.ofSeconds(15),
+            Duration.ofMinutes(2));
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+    public RetryPolicy {
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be >= 1");
+    }
+
+    /** Delay before attempt {@code failedAttempt + 1}: uniform in {@code [0, min(max, base * 2^(n-1))]}. */
+    public Duration delay(int failedAttempt, Random random) {
+        long base = baseDelay.toMillis();
+        long cap = maxDelay.toMillis();
+        long ceiling = Math.min(cap, base << Math.min(failedAttempt - 1, 20));
+        return ceiling <= 0 ? Duration.ZERO : Duration.ofMillis(random.nextLong(ceiling + 1));
+    }
+
+    /**
+     * Whether a failure is worth repeating: timeouts, dropped connections and statuses that signal
+     * a temporary condition (408, 425, 429 and 5xx other than 501 and 505). Interruptions, client
+     * errors, ignored range requests and writes to an output channel that was closed are not.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException status) return isRetryableStatus(status.status());
+        if (e instanceof CircuitOpenException || e instanceof RangeNotSatisfiedException
+                || e instanceof ClosedChannelException) return false;
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    public static boolean isRetryableStatus(int status) {
+        return status == 408 || status == 425 || status == 429
+                || (status >= 500 && status != 501 && status != 505);
+    }
+}
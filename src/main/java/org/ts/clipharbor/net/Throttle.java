@@ -0,0 +1,35 @@
+package org.ts.clipharbor.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/** Paces byte transfers to a rate; {@link #NONE} lets everything through at once. */
+public interface Throttle {
+
+    Throttle NONE = bytes -> {};
+
+    /** Accounts for {@code bytes} just transferred, blocking for as long as the rate requires. */
+    void acquire(long bytes) throws InterruptedIOException;
+
+    /** An input stream whose reads are paced by this throttle. */
+    default InputStream wrap(InputStream in) {
+        if (this == NONE) return in;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) acquire(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) acquire(n);
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package org.ts.clipharbor.net;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket refilled at {@code bytesPerSecond} and holding up to a quarter of a second's worth,
+ * so short bursts pass but the average stays at the rate. Bytes are taken after they were read and
+ * the balance may go negative; the caller then sleeps until it is paid back, which holds every
+ * thread sharing the bucket to the rate together.
+ */
+public final class TokenBucket implements Throttle {
+
+    private static final long MIN_BURST_BYTES = 64 * 1024;
+
+    private final long bytesPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(long bytesPerSecond) {
+        if (bytesPerSecond < 1) throw new IllegalArgumentException("bytesPerSecond must be >= 1");
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(MIN_BURST_BYTES, bytesPerSecond / 4.0);
+        this.tokens = capacity;
+    }
+
+    public long bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public void acquire(long bytes) throws InterruptedIOException {
+        sleep(take(bytes));
+    }
+
+    /** Takes {@code bytes} from the bucket; returns how many nanoseconds until the balance is even. */
+    synchronized long take(long bytes) {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+        lastRefill = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+
+    static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+}
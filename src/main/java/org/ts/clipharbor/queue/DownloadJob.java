@@ -0,0 +1,117 @@
+package org.ts.clipharbor.queue;
+
+import org.ts.clipharbor.download.TransferProgress;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * One page or stream URL queued for download. State and message changes are reported to the
+ * scheduler's listeners; the output file is assigned by the scheduler once the stream type, and so
+ * the extension, is known.
+ */
+public class DownloadJob {
+
+    private final int id;
+    private final String url;
+    private final File folder;
+    private final String host;
+    private final Consumer<DownloadJob> onChange;
+    private final TransferProgress progress = new TransferProgress();
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile String message = "Queued";
+    private volatile File outputFile;
+
+    DownloadJob(int id, String url, File folder, Consumer<DownloadJob> onChange) {
+        this.id = id;
+        this.url = url;
+        this.folder = folder;
+        this.host = hostOf(url);
+        this.onChange = onChange;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public File folder() {
+        return folder;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public JobState state() {
+        return state;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public File outputFile() {
+        return outputFile;
+    }
+
+    /** Byte and segment progress of the job's download; idle until the download starts. */
+    public TransferProgress progress() {
+        return progress;
+    }
+
+    /** Sets the user-visible status line of a running job. */
+    public void update(String message) {
+        this.message = message;
+        onChange.accept(this);
+    }
+
+    void setState(JobState state, String message) {
+        this.state = state;
+        this.message = message;
+        onChange.accept(this);
+    }
+
+    void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    /** File-name stem derived from the URL: the last path segment without extension, or the host. */
+    String baseName() {
+        String path = "";
+        try {
+            String p = URI.create(url).getPath();
+            if (p != null) path = p;
+        } catch (IllegalArgumentException ignored) {}
+        while (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        if (name.isEmpty() || name.equalsIgnoreCase("index") || name.equalsIgnoreCase("master")) name = host;
+        name = name.replaceAll("[^A-Za-z0-9._-]+", "_");
+        if (name.length() > 60) name = name.substring(0, 60);
+        return name.isEmpty() || name.equals("_") ? "video" : name;
+    }
+
+    @Override
+    public String toString() {
+        String name = outputFile != null ? outputFile.getName() : url;
+        String line = "#" + id + " [" + state + "] " + name + " - " + message;
+        return state == JobState.RUNNING && progress.bytesDone() > 0 ? line + " " + progress.snapshot().summary() : line;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String h = URI.create(url).getHost();
+            return h == null ? "" : h.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.ts.clipharbor.queue;
+
+import org.ts.clipharbor.download.DownloadJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued jobs in submission order subject to a global limit on running jobs and a limit per
+ * host, so a long list from one site cannot starve the others or hammer a single server. Listeners
+ * are called on the thread that changed the job and must hand off to their own thread if needed.
+ */
+public class DownloadScheduler {
+
+    public static final int DEFAULT_MAX_RUNNING = 3;
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+
+    /** The work done for one job; it may call {@link #allocateOutput} and {@link DownloadJob#update}. */
+    @FunctionalInterface
+    public interface JobRunner {
+        void run(DownloadJob job) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface JobListener {
+        void jobChanged(DownloadJob job);
+    }
+
+    private final int maxRunning;
+    private final int maxPerHost;
+    private final JobRunner runner;
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+    private final Deque<DownloadJob> queued = new ArrayDeque<>();
+    private final List<DownloadJob> jobs = new ArrayList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<File, DownloadJob> reservedOutputs = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ExecutorService executor;
+    private int running;
+
+    public DownloadScheduler(int maxRunning, int maxPerHost, JobRunner runner) {
+        if (maxRunning < 1 || maxPerHost < 1) throw new IllegalArgumentException("limits must be >= 1");
+        this.maxRunning = maxRunning;
+        this.maxPerHost = maxPerHost;
+        this.runner = runner;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "job-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void addListener(JobListener listener) {
+        listeners.add(listener);
+    }
+
+    public List<DownloadJob> submit(Collection<String> urls, File folder) {
+        List<DownloadJob> added = new ArrayList<>();
+        synchronized (this) {
+            for (String url : urls) {
+                String trimmed = url.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+                DownloadJob job = new DownloadJob(nextId.incrementAndGet(), trimmed, folder, this::fireChanged);
+                jobs.add(job);
+                queued.add(job);
+                added.add(job);
+            }
+        }
+        added.forEach(this::fireChanged);
+        dispatch();
+        return added;
+    }
+
+    public synchronized List<DownloadJob> jobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    public synchronized Map<JobState, Integer> counts() {
+        Map<JobState, Integer> counts = new EnumMap<>(JobState.class);
+        for (JobState state : JobState.values()) counts.put(state, 0);
+        for (DownloadJob job : jobs) counts.merge(job.state(), 1, Integer::sum);
+        return counts;
+    }
+
+    public synchronized boolean isIdle() {
+        return queued.isEmpty() && running == 0;
+    }
+
+    /** Blocks until every submitted job has finished. */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!isIdle()) wait();
+    }
+
+    /**
+     * Picks a file in the job's folder that no other job is using for the given source stream. An
+     * existing file whose download journal was claimed by the same page and stream is reused so an
+     * interrupted download resumes; otherwise names that already exist get a numeric suffix. Query
+     * strings are left out of the comparison since stream URLs often carry expiring tokens. Every
+     * file a job allocates stays reserved until the job finishes.
+     */
+    public synchronized File allocateOutput(DownloadJob job, String extension, String source) {
+        String base = job.baseName();
+        String origin = job.url() + " " + withoutQuery(source);
+        for (int n = 1; ; n++) {
+            File candidate = new File(job.folder(), (n == 1 ? base : base + "-" + n) + extension);
+            DownloadJob owner = reservedOutputs.get(candidate);
+            if (owner != null && owner != job) continue;
+            if (!candidate.exists() || origin.equals(DownloadJournal.originOf(candidate))) {
+                try {
+                    DownloadJournal.claim(candidate, origin);
+                } catch (IOException ignored) {
+                    // The downloader reports an unwritable folder when it opens the file.
+                }
+                reservedOutputs.put(candidate, job);
+                job.setOutputFile(candidate);
+                return candidate;
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void dispatch() {
+        List<DownloadJob> toStart = new ArrayList<>();
+        synchronized (this) {
+            Iterator<DownloadJob> it = queued.iterator();
+            while (running < maxRunning && it.hasNext()) {
+                DownloadJob job = it.next();
+                int hostRunning = runningPerHost.getOrDefault(job.host(), 0);
+                if (hostRunning >= maxPerHost) continue;
+                it.remove();
+                runningPerHost.put(job.host(), hostRunning + 1);
+                running++;
+                toStart.add(job);
+            }
+        }
+        for (DownloadJob job : toStart) {
+            executor.execute(() -> execute(job));
+        }
+    }
+
+    private void execute(DownloadJob job) {
+        job.setState(JobState.RUNNING, "Starting");
+        try {
+            runner.run(job);
+            job.setState(JobState.DONE, job.outputFile() != null ? "Saved " + job.outputFile().getName() : job.message());
+        } catch (Exception e) {
+            job.setState(JobState.FAILED, describe(e));
+        } catch (Error e) {
+            // The job is still marked failed so nobody waits on it, but the error is not swallowed.
+            job.setState(JobState.FAILED, describe(e));
+            throw e;
+        } finally {
+            synchronized (this) {
+                running--;
+                runningPerHost.merge(job.host(), -1, Integer::sum);
+                releaseOutputs(job);
+                notifyAll();
+            }
+            dispatch();
+        }
+    }
+
+    // A claim on a file that was never written, such as the MP4 of a remux that fell back to TS, is dropped.
+    private void releaseOutputs(DownloadJob job) {
+        Iterator<Map.Entry<File, DownloadJob>> it = reservedOutputs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<File, DownloadJob> entry = it.next();
+            if (entry.getValue() != job) continue;
+            if (!entry.getKey().exists()) {
+                try {
+                    Files.deleteIfExists(new File(entry.getKey().getPath() + DownloadJournal.SUFFIX).toPath());
+                } catch (IOException ignored) {
+                    // A leftover claim is harmless; the next allocation overwrites it.
+                }
+            }
+            it.remove();
+        }
+    }
+
+    private static String describe(Throwable t) {
+        return t.getMessage() != null ? t.getMessage() : t.toString();
+    }
+
+    private static String withoutQuery(String url) {
+        int cut = url.indexOf('?');
+        return cut < 0 ? url : url.substring(0, cut);
+    }
+
+    private void fireChanged(DownloadJob job) {
+        for (JobListener listener : listeners) {
+            listener.jobChanged(job);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.ts.clipharbor.queue;
+
+public enum JobState {
+    QUEUED, RUNNING, DONE, FAILED;
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+}
@@ -0,0 +1,44 @@
+package org.ts.clipharbor.remux;
+
+import java.io.IOException;
+
+/** AAC stream parameters taken from an ADTS header, as needed for the {@code esds} box. */
+record AacConfig(int objectType, int sampleRateIndex, int sampleRate, int channels) {
+
+    /** Samples per channel in one AAC frame. */
+    static final int FRAME_SAMPLES = 1024;
+
+    private static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    /** Reads the config from the ADTS header at {@code offset}. */
+    static AacConfig fromAdts(byte[] data, int offset) throws IOException {
+        int objectType = ((data[offset + 2] >> 6) & 3) + 1;
+        int rateIndex = (data[offset + 2] >> 2) & 0xF;
+        int channels = ((data[offset + 2] & 1) << 2) | ((data[offset + 3] >> 6) & 3);
+        if (rateIndex >= SAMPLE_RATES.length) throw new IOException("Unsupported AAC sample rate index " + rateIndex);
+        if (channels == 0) throw new IOException("AAC with in-band channel configuration is not supported");
+        return new AacConfig(objectType, rateIndex, SAMPLE_RATES[rateIndex], channels);
+    }
+
+    /** The two-byte AudioSpecificConfig. */
+    byte[] audioSpecificConfig() {
+        int value = (objectType << 11) | (sampleRateIndex << 7) | (channels << 3);
+        return new byte[]{(byte) (value >>> 8), (byte) value};
+    }
+
+    /** The body of the {@code esds} box after its version and flags. */
+    void writeEsds(Mp4Buffer out, int trackId) {
+        byte[] asc = audioSpecificConfig();
+        int decoderConfigLength = 13 + 2 + asc.length;
+        out.u8(0x03).u8(3 + 2 + decoderConfigLength + 3).u16(trackId).u8(0);
+        out.u8(0x04).u8(decoderConfigLength);
+        out.u8(0x40).u8(0x15).u24(0).u32(0).u32(0);
+        out.u8(0x05).u8(asc.length).bytes(asc);
+        out.u8(0x06).u8(1).u8(0x02);
+    }
+
+    String codec() {
+        return "mp4a.40." + objectType;
+    }
+}
@@ -0,0 +1,98 @@
+package org.ts.clipharbor.remux;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * The H.264 parameter sets of a video track and the values read from the SPS that the
+ * {@code avc1} sample entry needs: the coded picture size and the chroma format and bit depths.
+ */
+record AvcConfig(byte[] sps, byte[] pps, int width, int height,
+                 int chromaFormat, int bitDepthLuma, int bitDepthChroma) {
+
+    // Profiles whose SPS carries chroma format, bit depth and scaling matrix fields.
+    private static final Set<Integer> HIGH_PROFILES = Set.of(100, 110, 122, 244, 44, 83, 86, 118, 128, 138, 139, 134, 135);
+
+    static AvcConfig parse(byte[] sps, byte[] pps) throws IOException {
+        if (sps.length < 4) throw new IOException("SPS too short");
+        BitReader r = new BitReader(BitReader.unescape(sps));
+        r.bits(8); // NAL header
+        int profile = r.bits(8);
+        r.bits(16); // constraint flags, level
+        r.ue(); // seq_parameter_set_id
+        int chromaFormat = 1;
+        int bitDepthLuma = 8;
+        int bitDepthChroma = 8;
+        if (HIGH_PROFILES.contains(profile)) {
+            chromaFormat = r.ue();
+            if (chromaFormat == 3) r.flag(); // separate_colour_plane_flag
+            bitDepthLuma = 8 + r.ue();
+            bitDepthChroma = 8 + r.ue();
+            r.flag(); // qpprime_y_zero_transform_bypass_flag
+            if (r.flag()) {
+                for (int i = 0; i < (chromaFormat == 3 ? 12 : 8); i++) {
+                    if (r.flag()) skipScalingList(r, i < 6 ? 16 : 64);
+                }
+            }
+        }
+        r.ue(); // log2_max_frame_num_minus4
+        int pocType = r.ue();
+        if (pocType == 0) {
+            r.ue();
+        } else if (pocType == 1) {
+            r.flag();
+            r.se();
+            r.se();
+            int cycle = r.ue();
+            for (int i = 0; i < cycle; i++) r.se();
+        }
+        r.ue(); // max_num_ref_frames
+        r.flag(); // gaps_in_frame_num_value_allowed_flag
+        int widthInMbs = r.ue() + 1;
+        int heightInMapUnits = r.ue() + 1;
+        boolean frameMbsOnly = r.flag();
+        if (!frameMbsOnly) r.flag(); // mb_adaptive_frame_field_flag
+        r.flag(); // direct_8x8_inference_flag
+
+        int width = widthInMbs * 16;
+        int height = (frameMbsOnly ? 1 : 2) * heightInMapUnits * 16;
+        if (r.flag()) {
+            int left = r.ue();
+            int right = r.ue();
+            int top = r.ue();
+            int bottom = r.ue();
+            int cropX = chromaFormat == 1 || chromaFormat == 2 ? 2 : 1;
+            int cropY = (chromaFormat == 1 ? 2 : 1) * (frameMbsOnly ? 1 : 2);
+            width -= (left + right) * cropX;
+            height -= (top + bottom) * cropY;
+        }
+        if (width <= 0 || height <= 0) throw new IOException("SPS has an invalid picture size");
+        return new AvcConfig(sps, pps, width, height, chromaFormat, bitDepthLuma, bitDepthChroma);
+    }
+
+    /** The body of the {@code avcC} box: one SPS, one PPS, 4-byte NAL length prefixes. */
+    void writeAvcC(Mp4Buffer out) {
+        int profile = sps[1] & 0xFF;
+        out.u8(1).u8(profile).u8(sps[2] & 0xFF).u8(sps[3] & 0xFF);
+        out.u8(0xFC | 3).u8(0xE0 | 1);
+        out.u16(sps.length).bytes(sps);
+        out.u8(1).u16(pps.length).bytes(pps);
+        if (HIGH_PROFILES.contains(profile)) {
+            out.u8(0xFC | chromaFormat).u8(0xF8 | (bitDepthLuma - 8)).u8(0xF8 | (bitDepthChroma - 8)).u8(0);
+        }
+    }
+
+    /** The RFC 6381 codec string, e.g. {@code avc1.64001f}. */
+    String codec() {
+        return String.format("avc1.%02x%02x%02x", sps[1] & 0xFF, sps[2] & 0xFF, sps[3] & 0xFF);
+    }
+
+    private static void skipScalingList(BitReader r, int size) throws IOException {
+        int last = 8;
+        int next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) next = (last + r.se() + 256) % 256;
+            last = next == 0 ? last : next;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.ts.clipharbor.remux;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Reads bits and Exp-Golomb codes from an RBSP whose emulation prevention bytes are removed. */
+final class BitReader {
+
+    private final byte[] data;
+    private int bit;
+
+    BitReader(byte[] data) {
+        this.data = data;
+    }
+
+    int bits(int n) throws IOException {
+        int value = 0;
+        for (int i = 0; i < n; i++) {
+            value = (value << 1) | bit();
+        }
+        return value;
+    }
+
+    boolean flag() throws IOException {
+        return bit() == 1;
+    }
+
+    int ue() throws IOException {
+        int zeros = 0;
+        while (bit() == 0) {
+            if (++zeros > 31) throw new IOException("Malformed Exp-Golomb code");
+        }
+        return (int) ((1L << zeros) - 1 + (zeros == 0 ? 0 : Integer.toUnsignedLong(bits(zeros))));
+    }
+
+    int se() throws IOException {
+        int code = ue();
+        return (code & 1) == 1 ? (code + 1) / 2 : -(code / 2);
+    }
+
+    private int bit() throws IOException {
+        int index = bit >>> 3;
+        if (index >= data.length) throw new IOException("Parameter set ended early");
+        int value = (data[index] >> (7 - (bit & 7))) & 1;
+        bit++;
+        return value;
+    }
+
+    /** Drops the {@code 0x03} that follows every {@code 0x00 0x00} pair inside a NAL unit. */
+    static byte[] unescape(byte[] nal) {
+        byte[] out = new byte[nal.length];
+        int n = 0;
+        int zeros = 0;
+        for (byte b : nal) {
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            out[n++] = b;
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
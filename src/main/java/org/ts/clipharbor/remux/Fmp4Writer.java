@@ -0,0 +1,194 @@
+package org.ts.clipharbor.remux;
+
+import java.util.List;
+
+/**
+ * Writes the boxes of a fragmented MP4: an init section ({@code ftyp} and a {@code moov} whose
+ * sample tables are empty) and then one {@code moof}/{@code mdat} pair per fragment. Sample
+ * offsets are relative to the {@code moof}, so fragments can be appended without knowing where
+ * they land in the file.
+ */
+final class Fmp4Writer {
+
+    static final int VIDEO_TIMESCALE = 90_000;
+
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+    /** A track of the movie; exactly one of {@code video} and {@code audio} is set. */
+    record Track(int id, AvcConfig video, AacConfig audio) {
+
+        boolean isVideo() {
+            return video != null;
+        }
+
+        int timescale() {
+            return isVideo() ? VIDEO_TIMESCALE : audio.sampleRate();
+        }
+    }
+
+    /** One sample; {@code duration} and {@code compositionOffset} are in the track's timescale. */
+    record Sample(int duration, int compositionOffset, boolean sync, byte[] data) {}
+
+    /** The samples of one track in a fragment, starting at {@code baseDecodeTime}. */
+    record Run(Track track, long baseDecodeTime, List<Sample> samples) {}
+
+    private Fmp4Writer() {
+    }
+
+    static byte[] init(List<Track> tracks) {
+        Mp4Buffer out = new Mp4Buffer(1024);
+        int ftyp = out.box("ftyp");
+        out.fourcc("isom").u32(0x200).fourcc("isom").fourcc("iso6").fourcc("mp41");
+        if (tracks.stream().anyMatch(Track::isVideo)) out.fourcc("avc1");
+        out.end(ftyp);
+
+        int moov = out.box("moov");
+        int mvhd = out.fullBox("mvhd", 0, 0);
+        out.u32(0).u32(0).u32(1000).u32(0).u32(0x00010000).u16(0x0100).zeros(10);
+        matrix(out);
+        out.zeros(24).u32(tracks.size() + 1);
+        out.end(mvhd);
+        for (Track track : tracks) trak(out, track);
+        int mvex = out.box("mvex");
+        for (Track track : tracks) {
+            int trex = out.fullBox("trex", 0, 0);
+            out.u32(track.id()).u32(1).u32(0).u32(0).u32(0);
+            out.end(trex);
+        }
+        out.end(mvex);
+        out.end(moov);
+        return out.toByteArray();
+    }
+
+    static byte[] fragment(int sequence, List<Run> runs) {
+        int payload = 0;
+        for (Run run : runs) {
+            for (Sample sample : run.samples()) payload += sample.data().length;
+        }
+        Mp4Buffer out = new Mp4Buffer(payload + 1024);
+        int moof = out.box("moof");
+        int mfhd = out.fullBox("mfhd", 0, 0);
+        out.u32(sequence);
+        out.end(mfhd);
+
+        int[] dataOffsetAt = new int[runs.size()];
+        for (int r = 0; r < runs.size(); r++) {
+            Run run = runs.get(r);
+            boolean video = run.track().isVideo();
+            int traf = out.box("traf");
+            int tfhd = out.fullBox("tfhd", 0, 0x020000); // default-base-is-moof
+            out.u32(run.track().id());
+            out.end(tfhd);
+            int tfdt = out.fullBox("tfdt", 1, 0);
+            out.u64(run.baseDecodeTime());
+            out.end(tfdt);
+            // data-offset, sample duration, size and flags, plus composition offsets for video
+            int trun = out.fullBox("trun", 0, 0x000701 | (video ? 0x000800 : 0));
+            out.u32(run.samples().size());
+            dataOffsetAt[r] = out.size();
+            out.u32(0);
+            for (Sample sample : run.samples()) {
+                out.u32(sample.duration()).u32(sample.data().length)
+                        .u32(sample.sync() ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS);
+                if (video) out.u32(sample.compositionOffset());
+            }
+            out.end(trun);
+            out.end(traf);
+        }
+        out.end(moof);
+
+        int mdat = out.box("mdat");
+        for (int r = 0; r < runs.size(); r++) {
+            out.putU32(dataOffsetAt[r], out.size() - moof);
+            for (Sample sample : runs.get(r).samples()) out.bytes(sample.data());
+        }
+        out.end(mdat);
+        return out.toByteArray();
+    }
+
+    private static void trak(Mp4Buffer out, Track track) {
+        boolean video = track.isVideo();
+        int trak = out.box("trak");
+        int tkhd = out.fullBox("tkhd", 0, 3); // enabled, in movie
+        out.u32(0).u32(0).u32(track.id()).u32(0).u32(0).zeros(8);
+        out.u16(0).u16(0).u16(video ? 0 : 0x0100).u16(0);
+        matrix(out);
+        out.u32(video ? (long) track.video().width() << 16 : 0).u32(video ? (long) track.video().height() << 16 : 0);
+        out.end(tkhd);
+
+        int mdia = out.box("mdia");
+        int mdhd = out.fullBox("mdhd", 0, 0);
+        out.u32(0).u32(0).u32(track.timescale()).u32(0).u16(0x55C4).u16(0); // language "und"
+        out.end(mdhd);
+        int hdlr = out.fullBox("hdlr", 0, 0);
+        out.u32(0).fourcc(video ? "vide" : "soun").zeros(12).fourcc(video ? "VideoHandler" : "SoundHandler").u8(0);
+        out.end(hdlr);
+
+        int minf = out.box("minf");
+        if (video) {
+            int vmhd = out.fullBox("vmhd", 0, 1);
+            out.u16(0).zeros(6);
+            out.end(vmhd);
+        } else {
+            int smhd = out.fullBox("smhd", 0, 0);
+            out.u16(0).u16(0);
+            out.end(smhd);
+        }
+        int dinf = out.box("dinf");
+        int dref = out.fullBox("dref", 0, 0);
+        out.u32(1);
+        out.end(out.fullBox("url ", 0, 1)); // media is in this file
+        out.end(dref);
+        out.end(dinf);
+
+        int stbl = out.box("stbl");
+        int stsd = out.fullBox("stsd", 0, 0);
+        out.u32(1);
+        if (video) {
+            avc1(out, track.video());
+        } else {
+            mp4a(out, track);
+        }
+        out.end(stsd);
+        for (String empty : new String[]{"stts", "stsc", "stco"}) {
+            int box = out.fullBox(empty, 0, 0);
+            out.u32(0);
+            out.end(box);
+        }
+        int stsz = out.fullBox("stsz", 0, 0);
+        out.u32(0).u32(0);
+        out.end(stsz);
+        out.end(stbl);
+        out.end(minf);
+        out.end(mdia);
+        out.end(trak);
+    }
+
+    private static void avc1(Mp4Buffer out, AvcConfig config) {
+        int avc1 = out.box("avc1");
+        out.zeros(6).u16(1).u16(0).u16(0).zeros(12);
+        out.u16(config.width()).u16(config.height()).u32(0x00480000).u32(0x00480000).u32(0).u16(1);
+        out.zeros(32).u16(0x0018).u16(0xFFFF);
+        int avcC = out.box("avcC");
+        config.writeAvcC(out);
+        out.end(avcC);
+        out.end(avc1);
+    }
+
+    private static void mp4a(Mp4Buffer out, Track track) {
+        AacConfig config = track.audio();
+        int mp4a = out.box("mp4a");
+        out.zeros(6).u16(1).zeros(8);
+        out.u16(config.channels()).u16(16).u16(0).u16(0);
+        out.u32(config.sampleRate() < 0x10000 ? (long) config.sampleRate() << 16 : 0);
+        int esds = out.fullBox("esds", 0, 0);
+        config.writeEsds(out, track.id());
+        out.end(esds);
+        out.end(mp4a);
+    }
+
+    private static void matrix(Mp4Buffer out) {
+        out.u32(0x00010000).u32(0).u32(0).u32(0).u32(0x00010000).u32(0).u32(0).u32(0).u32(0x40000000);
+    }
+}
@@ -0,0 +1,109 @@
+package org.ts.clipharbor.remux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable big-endian byte buffer for writing ISO BMFF boxes. {@link #box} and {@link #fullBox}
+ * return the box's start offset, which {@link #end} later patches with the finished size.
+ */
+final class Mp4Buffer {
+
+    private byte[] bytes;
+    private int size;
+
+    Mp4Buffer(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int box(String type) {
+        int start = size;
+        u32(0);
+        fourcc(type);
+        return start;
+    }
+
+    int fullBox(String type, int version, int flags) {
+        int start = box(type);
+        u8(version);
+        u24(flags);
+        return start;
+    }
+
+    void end(int start) {
+        putU32(start, size - start);
+    }
+
+    Mp4Buffer u8(int v) {
+        ensure(1);
+        bytes[size++] = (byte) v;
+        return this;
+    }
+
+    Mp4Buffer u16(int v) {
+        ensure(2);
+        bytes[size++] = (byte) (v >>> 8);
+        bytes[size++] = (byte) v;
+        return this;
+    }
+
+    Mp4Buffer u24(int v) {
+        ensure(3);
+        bytes[size++] = (byte) (v >>> 16);
+        bytes[size++] = (byte) (v >>> 8);
+        bytes[size++] = (byte) v;
+        return this;
+    }
+
+    Mp4Buffer u32(long v) {
+        ensure(4);
+        putU32(size, v);
+        size += 4;
+        return this;
+    }
+
+    Mp4Buffer u64(long v) {
+        u32(v >>> 32);
+        return u32(v);
+    }
+
+    Mp4Buffer fourcc(String type) {
+        return bytes(type.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    Mp4Buffer zeros(int n) {
+        ensure(n);
+        size += n;
+        return this;
+    }
+
+    Mp4Buffer bytes(byte[] src) {
+        return bytes(src, 0, src.length);
+    }
+
+    Mp4Buffer bytes(byte[] src, int offset, int length) {
+        ensure(length);
+        System.arraycopy(src, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    void putU32(int position, long v) {
+        bytes[position] = (byte) (v >>> 24);
+        bytes[position + 1] = (byte) (v >>> 16);
+        bytes[position + 2] = (byte) (v >>> 8);
+        bytes[position + 3] = (byte) v;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensure(int n) {
+        if (size + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+    }
+}
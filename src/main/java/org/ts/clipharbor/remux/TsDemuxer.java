@@ -0,0 +1,140 @@
+package org.ts.clipharbor.remux;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits MPEG-TS data into PES packets. The PAT and PMT found in the data decide which PIDs carry
+ * elementary streams; payloads of those PIDs are gathered until the next unit start, or the end of
+ * the data, and returned with their timestamps. The stream table is kept between calls, so a
+ * segment without its own PAT and PMT is read with the previous one's.
+ */
+final class TsDemuxer {
+
+    static final int PACKET_SIZE = 188;
+    static final int STREAM_AAC = 0x0F;
+    static final int STREAM_H264 = 0x1B;
+    static final long NO_TIMESTAMP = -1;
+
+    private static final byte SYNC_BYTE = 0x47;
+
+    /** One PES packet; {@code dts} equals {@code pts} when the packet has no DTS. */
+    record Pes(int pid, int streamType, long pts, long dts, byte[] payload) {}
+
+    private int pmtPid = -1;
+    private final Map<Integer, Integer> streams = new LinkedHashMap<>();
+
+    /** PID to stream type for every elementary stream in the last PMT seen. */
+    Map<Integer, Integer> streams() {
+        return streams;
+    }
+
+    List<Pes> demux(byte[] data) {
+        List<Pes> out = new ArrayList<>();
+        Map<Integer, ByteArrayOutputStream> pending = new HashMap<>();
+        int i = sync(data, 0);
+        while (i >= 0 && i + PACKET_SIZE <= data.length) {
+            if (data[i] != SYNC_BYTE) {
+                i = sync(data, i);
+                continue;
+            }
+            readPacket(data, i, pending, out);
+            i += PACKET_SIZE;
+        }
+        for (Map.Entry<Integer, ByteArrayOutputStream> entry : pending.entrySet()) {
+            flush(entry.getKey(), entry.getValue(), out);
+        }
+        return out;
+    }
+
+    private void readPacket(byte[] data, int i, Map<Integer, ByteArrayOutputStream> pending, List<Pes> out) {
+        int end = i + PACKET_SIZE;
+        boolean unitStart = (data[i + 1] & 0x40) != 0;
+        int pid = ((data[i + 1] & 0x1F) << 8) | (data[i + 2] & 0xFF);
+        int adaptation = (data[i + 3] >> 4) & 3;
+        int offset = i + 4;
+        if ((adaptation & 2) != 0) offset += 1 + (data[offset] & 0xFF);
+        if ((adaptation & 1) == 0 || offset >= end) return;
+
+        if (pid == 0) {
+            if (unitStart) readPat(data, offset, end);
+        } else if (pid == pmtPid) {
+            if (unitStart) readPmt(data, offset, end);
+        } else if (streams.containsKey(pid)) {
+            if (unitStart) {
+                ByteArrayOutputStream previous = pending.put(pid, new ByteArrayOutputStream(64 * 1024));
+                if (previous != null) flush(pid, previous, out);
+            }
+            ByteArrayOutputStream buffer = pending.get(pid);
+            if (buffer != null) buffer.write(data, offset, end - offset);
+        }
+    }
+
+    private void readPat(byte[] data, int offset, int end) {
+        offset += 1 + (data[offset] & 0xFF);
+        if (offset + 8 > end || data[offset] != 0) return;
+        int sectionEnd = Math.min(end, offset + 3 + sectionLength(data, offset)) - 4;
+        for (int p = offset + 8; p + 4 <= sectionEnd; p += 4) {
+            int program = ((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF);
+            if (program != 0) {
+                pmtPid = ((data[p + 2] & 0x1F) << 8) | (data[p + 3] & 0xFF);
+                return;
+            }
+        }
+    }
+
+    private void readPmt(byte[] data, int offset, int end) {
+        offset += 1 + (data[offset] & 0xFF);
+        if (offset + 12 > end || data[offset] != 2) return;
+        int sectionEnd = Math.min(end, offset + 3 + sectionLength(data, offset)) - 4;
+        int programInfoLength = ((data[offset + 10] & 0x0F) << 8) | (data[offset + 11] & 0xFF);
+        streams.clear();
+        for (int p = offset + 12 + programInfoLength; p + 5 <= sectionEnd; ) {
+            int type = data[p] & 0xFF;
+            int pid = ((data[p + 1] & 0x1F) << 8) | (data[p + 2] & 0xFF);
+            int infoLength = ((data[p + 3] & 0x0F) << 8) | (data[p + 4] & 0xFF);
+            streams.put(pid, type);
+            p += 5 + infoLength;
+        }
+    }
+
+    private void flush(int pid, ByteArrayOutputStream buffer, List<Pes> out) {
+        byte[] pes = buffer.toByteArray();
+        if (pes.length < 9 || pes[0] != 0 || pes[1] != 0 || pes[2] != 1) return;
+        int flags = pes[7] & 0xFF;
+        int payloadStart = 9 + (pes[8] & 0xFF);
+        if (payloadStart > pes.length) return;
+        long pts = (flags & 0x80) != 0 ? timestamp(pes, 9) : NO_TIMESTAMP;
+        long dts = (flags & 0xC0) == 0xC0 ? timestamp(pes, 14) : pts;
+        byte[] payload = new byte[pes.length - payloadStart];
+        System.arraycopy(pes, payloadStart, payload, 0, payload.length);
+        out.add(new Pes(pid, streams.getOrDefault(pid, 0), pts, dts, payload));
+    }
+
+    private static int sectionLength(byte[] data, int offset) {
+        return ((data[offset + 1] & 0x0F) << 8) | (data[offset + 2] & 0xFF);
+    }
+
+    // 33-bit timestamp spread over five bytes with marker bits.
+    private static long timestamp(byte[] pes, int offset) {
+        return ((long) (pes[offset] >> 1 & 0x07) << 30)
+                | ((long) (pes[offset + 1] & 0xFF) << 22)
+                | ((long) (pes[offset + 2] >> 1 & 0x7F) << 15)
+                | ((long) (pes[offset + 3] & 0xFF) << 7)
+                | ((pes[offset + 4] & 0xFF) >> 1);
+    }
+
+    // First offset from which two consecutive packets start with the sync byte.
+    private static int sync(byte[] data, int from) {
+        for (int i = from; i + PACKET_SIZE <= data.length; i++) {
+            if (data[i] == SYNC_BYTE && (i + PACKET_SIZE == data.length || data[i + PACKET_SIZE] == SYNC_BYTE)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,322 @@
+package org.ts.clipharbor.remux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns the MPEG-TS segments of an HLS stream into a fragmented MP4, one segment at a time. Each
+ * call to {@link #remux} demuxes one segment and returns the bytes to append to the output: the
+ * init section before the first fragment, then one fragment per segment. Only that segment's
+ * samples are held in memory, so the footprint does not grow with the length of the video.
+ *
+ * <p>H.264 video and ADTS AAC audio are supported; timed metadata streams are skipped and any other
+ * codec makes {@link #remux} fail, which callers take as the cue to keep the raw transport stream.
+ * Timestamps are unwrapped across the 33-bit rollover, and a jump of more than
+ * {@link #MAX_GAP_SECONDS} between segments (a discontinuity) is closed up so the timeline stays
+ * continuous. The little state carried from one segment to the next is exposed through
+ * {@link #state()} so a resumed download can continue the same timeline.
+ */
+public final class TsRemuxer {
+
+    public static final int MAX_GAP_SECONDS = 10;
+
+    private static final long WRAP = 1L << 33;
+    private static final long HALF_WRAP = 1L << 32;
+    private static final long UNSET = Long.MIN_VALUE;
+    private static final int DEFAULT_FRAME_DURATION = Fmp4Writer.VIDEO_TIMESCALE / 30;
+    private static final String STATE_VERSION = "1";
+
+    private final TsDemuxer demuxer = new TsDemuxer();
+    private List<Fmp4Writer.Track> tracks;
+    private boolean resumed;
+    private boolean hasVideo;
+    private boolean hasAudio;
+    private byte[] sps;
+    private byte[] pps;
+    private AacConfig aac;
+
+    // Timeline state, all in 90 kHz units.
+    private long origin = UNSET;
+    private long wrapOffset;
+    private long lastTimestamp = UNSET;
+    private long shift;
+    private long nextStart = UNSET;
+    private int frameDuration = DEFAULT_FRAME_DURATION;
+    private int sequence;
+
+    public TsRemuxer() {
+    }
+
+    /**
+     * Continues the timeline recorded by {@link #state()}; the init section is not written again. The
+     * tracks are rebuilt from the first segment remuxed, so {@link #remux} fails when that segment
+     * carries no SPS/PPS or ADTS header.
+     */
+    public static TsRemuxer fromState(String state) {
+        String[] f = state.split(",");
+        if (f.length != 10 || !STATE_VERSION.equals(f[0])) {
+            throw new IllegalArgumentException("Unrecognised remux state: " + state);
+        }
+        TsRemuxer remuxer = new TsRemuxer();
+        remuxer.hasVideo = Boolean.parseBoolean(f[1]);
+        remuxer.hasAudio = Boolean.parseBoolean(f[2]);
+        remuxer.origin = Long.parseLong(f[3]);
+        remuxer.wrapOffset = Long.parseLong(f[4]);
+        remuxer.lastTimestamp = Long.parseLong(f[5]);
+        remuxer.shift = Long.parseLong(f[6]);
+        remuxer.nextStart = Long.parseLong(f[7]);
+        remuxer.frameDuration = Integer.parseInt(f[8]);
+        remuxer.sequence = Integer.parseInt(f[9]);
+        remuxer.resumed = true;
+        return remuxer;
+    }
+
+    public String state() {
+        return String.join(",", STATE_VERSION, String.valueOf(hasVideo), String.valueOf(hasAudio),
+                String.valueOf(origin), String.valueOf(wrapOffset), String.valueOf(lastTimestamp),
+                String.valueOf(shift), String.valueOf(nextStart), String.valueOf(frameDuration),
+                String.valueOf(sequence));
+    }
+
+    /** Codecs of the output, e.g. {@code avc1.64001f,mp4a.40.2}; empty before the first segment. */
+    public String codecs() {
+        List<String> codecs = new ArrayList<>();
+        if (tracks == null) return "";
+        for (Fmp4Writer.Track track : tracks) {
+            codecs.add(track.isVideo() ? track.video().codec() : track.audio().codec());
+        }
+        return String.join(",", codecs);
+    }
+
+    /** Remuxes one segment; returns the bytes to append, which may be empty. */
+    public byte[] remux(byte[] segment) throws IOException {
+        List<TsDemuxer.Pes> packets = demuxer.demux(segment);
+        if (demuxer.streams().isEmpty()) throw new IOException("No program map found in segment");
+        for (int type : demuxer.streams().values()) {
+            if (type != TsDemuxer.STREAM_H264 && type != TsDemuxer.STREAM_AAC && !isMetadata(type)) {
+                throw new IOException(String.format("Unsupported stream type 0x%02x", type));
+            }
+        }
+
+        List<Frame> video = new ArrayList<>();
+        List<Frame> audio = new ArrayList<>();
+        for (TsDemuxer.Pes pes : packets) {
+            if (pes.streamType() == TsDemuxer.STREAM_H264) {
+                addVideo(pes, video);
+            } else if (pes.streamType() == TsDemuxer.STREAM_AAC) {
+                addAudio(pes, audio);
+            }
+        }
+
+        byte[] init = null;
+        if (tracks == null && resumed) {
+            restoreTracks();
+        } else if (tracks == null) {
+            init = Fmp4Writer.init(createTracks(!video.isEmpty(), !audio.isEmpty()));
+        }
+        if (!hasVideo) video.clear();
+        if (!hasAudio) audio.clear();
+        if (video.isEmpty() && audio.isEmpty()) return init == null ? new byte[0] : init;
+
+        List<Fmp4Writer.Run> runs = new ArrayList<>(2);
+        long start = Math.min(video.isEmpty() ? Long.MAX_VALUE : video.get(0).dts,
+                audio.isEmpty() ? Long.MAX_VALUE : audio.get(0).pts);
+        if (origin == UNSET) origin = start;
+        long position = start - origin + shift;
+        if (nextStart != UNSET && Math.abs(position - nextStart) > MAX_GAP_SECONDS * (long) Fmp4Writer.VIDEO_TIMESCALE) {
+            shift += nextStart - position;
+        }
+        long end = 0;
+        for (Fmp4Writer.Track track : tracks) {
+            if (track.isVideo() && !video.isEmpty()) {
+                end = Math.max(end, addVideoRun(track, video, runs));
+            } else if (!track.isVideo() && !audio.isEmpty()) {
+                end = Math.max(end, addAudioRun(track, audio, runs));
+            }
+        }
+        nextStart = end;
+
+        byte[] fragment = Fmp4Writer.fragment(++sequence, runs);
+        if (init == null) return fragment;
+        byte[] out = Arrays.copyOf(init, init.length + fragment.length);
+        System.arraycopy(fragment, 0, out, init.length, fragment.length);
+        return out;
+    }
+
+    private List<Fmp4Writer.Track> createTracks(boolean videoSamples, boolean audioSamples) throws IOException {
+        hasVideo = demuxer.streams().containsValue(TsDemuxer.STREAM_H264) && videoSamples;
+        hasAudio = demuxer.streams().containsValue(TsDemuxer.STREAM_AAC) && audioSamples;
+        if (!hasVideo && !hasAudio) throw new IOException("No H.264 or AAC samples in the first segment");
+        List<Fmp4Writer.Track> created = new ArrayList<>(2);
+        if (hasVideo) {
+            if (sps == null || pps == null) throw new IOException("No SPS/PPS in the first segment");
+            created.add(new Fmp4Writer.Track(1, AvcConfig.parse(sps, pps), null));
+        }
+        if (hasAudio) created.add(new Fmp4Writer.Track(created.size() + 1, null, aac));
+        tracks = List.copyOf(created);
+        return tracks;
+    }
+
+    // A resumed remuxer has its init section on disk already; the tracks are rebuilt from the segment.
+    private void restoreTracks() throws IOException {
+        List<Fmp4Writer.Track> restored = new ArrayList<>(2);
+        if (hasVideo) {
+            if (sps == null || pps == null) throw new IOException("No SPS/PPS in the segment to resume with");
+            restored.add(new Fmp4Writer.Track(1, AvcConfig.parse(sps, pps), null));
+        }
+        if (hasAudio) {
+            if (aac == null) throw new IOException("No AAC frames in the segment to resume with");
+            restored.add(new Fmp4Writer.Track(restored.size() + 1, null, aac));
+        }
+        tracks = List.copyOf(restored);
+    }
+
+    private long addVideoRun(Fmp4Writer.Track track, List<Frame> frames, List<Fmp4Writer.Run> runs) {
+        List<Fmp4Writer.Sample> samples = new ArrayList<>(frames.size());
+        long base = Math.max(0, frames.get(0).dts - origin + shift);
+        for (int i = 0; i < frames.size(); i++) {
+            Frame frame = frames.get(i);
+            if (i + 1 < frames.size()) {
+                long delta = frames.get(i + 1).dts - frame.dts;
+                if (delta > 0 && delta < Fmp4Writer.VIDEO_TIMESCALE) frameDuration = (int) delta;
+            }
+            int offset = (int) Math.max(0, Math.min(Integer.MAX_VALUE, frame.pts - frame.dts));
+            samples.add(new Fmp4Writer.Sample(frameDuration, offset, frame.sync, frame.data));
+        }
+        runs.add(new Fmp4Writer.Run(track, base, samples));
+        long duration = 0;
+        for (Fmp4Writer.Sample sample : samples) duration += sample.duration();
+        return base + duration;
+    }
+
+    private long addAudioRun(Fmp4Writer.Track track, List<Frame> frames, List<Fmp4Writer.Run> runs) {
+        int rate = track.audio().sampleRate();
+        long start90k = Math.max(0, frames.get(0).pts - origin + shift);
+        long base = (start90k * rate + Fmp4Writer.VIDEO_TIMESCALE / 2) / Fmp4Writer.VIDEO_TIMESCALE;
+        List<Fmp4Writer.Sample> samples = new ArrayList<>(frames.size());
+        for (Frame frame : frames) {
+            samples.add(new Fmp4Writer.Sample(AacConfig.FRAME_SAMPLES, 0, true, frame.data));
+        }
+        runs.add(new Fmp4Writer.Run(track, base, samples));
+        return start90k + (long) frames.size() * AacConfig.FRAME_SAMPLES * Fmp4Writer.VIDEO_TIMESCALE / rate;
+    }
+
+    // One PES is one access unit; Annex B start codes become 4-byte lengths and parameter sets move to avcC.
+    private void addVideo(TsDemuxer.Pes pes, List<Frame> frames) {
+        ByteArrayOutputStream sample = new ByteArrayOutputStream(pes.payload().length + 64);
+        boolean sync = false;
+        for (byte[] nal : splitAnnexB(pes.payload())) {
+            int type = nal[0] & 0x1F;
+            switch (type) {
+                case 7 -> {
+                    if (sps == null) sps = nal;
+                }
+                case 8 -> {
+                    if (pps == null) pps = nal;
+                }
+                case 9 -> {
+                    // access unit delimiter, not carried in MP4
+                }
+                default -> {
+                    if (type == 5) sync = true;
+                    sample.write(nal.length >>> 24);
+                    sample.write(nal.length >>> 16);
+                    sample.write(nal.length >>> 8);
+                    sample.write(nal.length);
+                    sample.write(nal, 0, nal.length);
+                }
+            }
+        }
+        if (sample.size() == 0) return;
+        long pts;
+        long dts;
+        if (pes.pts() != TsDemuxer.NO_TIMESTAMP) {
+            dts = unwrap(pes.dts());
+            pts = dts + ((pes.pts() - pes.dts()) & (WRAP - 1));
+        } else if (!frames.isEmpty()) {
+            dts = frames.get(frames.size() - 1).dts + frameDuration;
+            pts = dts;
+        } else {
+            return;
+        }
+        frames.add(new Frame(pts, dts, sync, sample.toByteArray()));
+    }
+
+    private void addAudio(TsDemuxer.Pes pes, List<Frame> frames) throws IOException {
+        byte[] data = pes.payload();
+        long first;
+        if (pes.pts() != TsDemuxer.NO_TIMESTAMP) {
+            first = unwrap(pes.pts());
+        } else if (!frames.isEmpty() && aac != null) {
+            first = frames.get(frames.size() - 1).pts + frameTicks(1);
+        } else {
+            return;
+        }
+        int count = 0;
+        int p = 0;
+        while (p + 7 <= data.length) {
+            if ((data[p] & 0xFF) != 0xFF || (data[p + 1] & 0xF0) != 0xF0) {
+                p++;
+                continue;
+            }
+            int headerLength = (data[p + 1] & 1) == 1 ? 7 : 9;
+            int frameLength = ((data[p + 3] & 3) << 11) | ((data[p + 4] & 0xFF) << 3) | ((data[p + 5] & 0xFF) >> 5);
+            if (frameLength <= headerLength || p + frameLength > data.length) break;
+            if (aac == null) aac = AacConfig.fromAdts(data, p);
+            long pts = first + frameTicks(count++);
+            frames.add(new Frame(pts, pts, true, Arrays.copyOfRange(data, p + headerLength, p + frameLength)));
+            p += frameLength;
+        }
+    }
+
+    private long frameTicks(int frames) {
+        return (long) frames * AacConfig.FRAME_SAMPLES * Fmp4Writer.VIDEO_TIMESCALE / aac.sampleRate();
+    }
+
+    private long unwrap(long timestamp) {
+        long value = timestamp + wrapOffset;
+        if (lastTimestamp != UNSET) {
+            if (value < lastTimestamp - HALF_WRAP) {
+                wrapOffset += WRAP;
+                value += WRAP;
+            } else if (value > lastTimestamp + HALF_WRAP) {
+                wrapOffset -= WRAP;
+                value -= WRAP;
+            }
+        }
+        lastTimestamp = value;
+        return value;
+    }
+
+    private static boolean isMetadata(int streamType) {
+        // PES private data, ID3 timed metadata, SCTE-35 cues
+        return streamType == 0x06 || streamType == 0x15 || streamType == 0x86;
+    }
+
+    static List<byte[]> splitAnnexB(byte[] data) {
+        List<byte[]> nals = new ArrayList<>();
+        int start = -1;
+        int i = 0;
+        while (i + 2 < data.length) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                if (start >= 0) addNal(nals, data, start, i);
+                i += 3;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (start >= 0) addNal(nals, data, start, data.length);
+        return nals;
+    }
+
+    private static void addNal(List<byte[]> nals, byte[] data, int start, int end) {
+        while (end > start && data[end - 1] == 0) end--;
+        if (end > start) nals.add(Arrays.copyOfRange(data, start, end));
+    }
+
+    private record Frame(long pts, long dts, boolean sync, byte[] data) {}
+}
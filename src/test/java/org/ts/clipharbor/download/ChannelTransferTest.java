@@ -0,0 +1,185 @@
+package org.ts.clipharbor.download;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelTransferTest {
+
+    private static final TransferOptions OPTIONS = new TransferOptions(8192, false, 0, false, 1, 1);
+
+    @TempDir
+    File folder;
+
+    @Test
+    void concurrentTransfersDoNotShareAWriter() throws Exception {
+        // Each write holds its thread until the other transfer's write has started too.
+        CountDownLatch bothWriting = new CountDownLatch(2);
+        byte[] data = new byte[3 * 8192];
+        new Random(3).nextBytes(data);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Long>> copies = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                File file = new File(folder, "out" + i);
+                files.add(file);
+                copies.add(callers.submit(() -> {
+                    try (FileChannel out = new GatedChannel(FileChannel.open(file.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE), bothWriting)) {
+                        return new ChannelTransfer(OPTIONS, new TransferStats())
+                                .copy(new ByteArrayInputStream(data), out, 0);
+                    }
+                }));
+            }
+            for (int i = 0; i < 2; i++) {
+                assertEquals(data.length, copies.get(i).get(10, TimeUnit.SECONDS));
+                assertArrayEquals(data, Files.readAllBytes(files.get(i).toPath()));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void appendKeepsBatchOrderAcrossWriterThreads() throws IOException {
+        byte[] data = new byte[20 * 8192 + 100];
+        new Random(4).nextBytes(data);
+        File file = new File(folder, "out");
+        ChannelTransfer transfer = new ChannelTransfer(new TransferOptions(8192, false, 0, false, 4, 4),
+                new TransferStats());
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(data, 0, 100));
+            assertEquals(data.length - 100, transfer.append(new ByteArrayInputStream(data, 100, data.length - 100), out));
+            assertEquals(data.length, out.position());
+        }
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    // Positional writes wait at the latch; everything else goes straight to the file.
+    private static class GatedChannel extends FileChannel {
+
+        private final FileChannel file;
+        private final CountDownLatch gate;
+
+        GatedChannel(FileChannel file, CountDownLatch gate) {
+            this.file = file;
+            this.gate = gate;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            gate.countDown();
+            try {
+                if (!gate.await(5, TimeUnit.SECONDS)) throw new IOException("transfers were written one at a time");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return file.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return file.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return file.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return file.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return file.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            file.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return file.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return file.read(dst, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+}
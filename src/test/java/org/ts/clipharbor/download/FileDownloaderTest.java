@@ -0,0 +1,80 @@
+package org.ts.clipharbor.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HostHealth;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Retrier;
+import org.ts.clipharbor.net.RetryPolicy;
+import org.ts.clipharbor.net.StubServer;
+import org.ts.clipharbor.net.Throttle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloaderTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @TempDir
+    File folder;
+
+    private final byte[] body = new byte[4 * CHUNK + 1000];
+    private final List<Duration> sleeps = new CopyOnWriteArrayList<>();
+    private StubServer server;
+    private HttpService http;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(3).nextBytes(body);
+        server = new StubServer()
+                .route("/ranged.mp4", StubServer.file(body, "video/mp4", true))
+                .route("/whole.mp4", StubServer.file(body, "video/mp4", false));
+        http = new HttpService(Duration.ofSeconds(5), Duration.ofSeconds(5), "test",
+                new Retrier(RetryPolicy.DEFAULT, new HostHealth(Duration.ofSeconds(5)), sleeps::add, new Random(1), Log.NONE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private FileDownloader downloader() {
+        return new FileDownloader(http, 4, CHUNK, new TransferOptions(8192, false, 0, false, 2, 2), Throttle.NONE, Log.NONE);
+    }
+
+    @Test
+    void downloadsOverParallelRanges() throws IOException {
+        File out = new File(folder, "ranged.mp4");
+
+        downloader().download(server.url("/ranged.mp4"), out);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertEquals(5, server.count("GET", "/ranged.mp4"));
+        assertTrue(server.requests().stream().filter(r -> r.method().equals("GET")).allMatch(r -> r.range() != null));
+        assertFalse(new File(folder, "ranged.mp4.journal").exists());
+    }
+
+    @Test
+    void ignoredRangeFallsBackToSingleStreamWithoutRetrying() throws IOException {
+        File out = new File(folder, "whole.mp4");
+
+        downloader().download(server.url("/whole.mp4"), out);
+
+        assertArrayEquals(body, Files.readAllBytes(out.toPath()));
+        assertTrue(sleeps.isEmpty(), "backed off " + sleeps);
+        long rangeRequests = server.requests().stream().filter(r -> r.method().equals("GET") && r.range() != null).count();
+        assertTrue(rangeRequests <= 5, rangeRequests + " range requests");
+        assertEquals(1, server.requests().stream().filter(r -> r.method().equals("GET") && r.range() == null).count());
+    }
+}
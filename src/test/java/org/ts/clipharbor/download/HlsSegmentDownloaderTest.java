@@ -0,0 +1,186 @@
+package org.ts.clipharbor.download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ts.clipharbor.hls.HlsSegment;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HostHealth;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Retrier;
+import org.ts.clipharbor.net.RetryPolicy;
+import org.ts.clipharbor.net.StubServer;
+import org.ts.clipharbor.net.Throttle;
+import org.ts.clipharbor.remux.TsRemuxer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HlsSegmentDownloaderTest {
+
+    // The remux sample: three segments of H.264 and AAC, the second without SPS/PPS.
+    private static final int SEGMENTS = 3;
+
+    @TempDir
+    File folder;
+
+    private final AtomicBoolean failNext = new AtomicBoolean();
+    private volatile String failingPath;
+    private final byte[][] bodies = new byte[SEGMENTS][];
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long responseDelayMillis;
+    private StubServer server;
+    private HttpService http;
+    private List<HlsSegment> segments;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubServer();
+        segments = new ArrayList<>();
+        for (int i = 0; i < SEGMENTS; i++) {
+            int index = i;
+            bodies[i] = segment(i);
+            String path = "/segment" + i + ".ts";
+            server.route(path, exchange -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(responseDelayMillis);
+                    if (exchange.getRequestURI().getPath().equals(failingPath) && failNext.getAndSet(false)) {
+                        StubServer.respond(exchange, 404, "text/plain", new byte[0]);
+                    } else {
+                        StubServer.respond(exchange, 200, "video/mp2t", bodies[index]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+            segments.add(new HlsSegment(server.url(path), 1 / 3.0));
+        }
+        http = new HttpService(Duration.ofSeconds(5), Duration.ofSeconds(5), "test",
+                new Retrier(RetryPolicy.DEFAULT, new HostHealth(Duration.ofSeconds(5)), d -> {}, new Random(1), Log.NONE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private static byte[] segment(int index) {
+        try (InputStream in = TsRemuxer.class.getResourceAsStream("segment" + index + ".ts")) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Relabels the H.264 stream in the segment's PMT as HEVC, which the remuxer does not take.
+    private static byte[] withHevcVideo(byte[] ts) {
+        byte[] out = ts.clone();
+        for (int p = 0; p + 188 <= out.length; p += 188) {
+            int pid = ((out[p + 1] & 0x1F) << 8) | (out[p + 2] & 0xFF);
+            int section = p + 5 + (out[p + 4] & 0xFF);
+            boolean payloadOnly = (out[p + 3] & 0x30) == 0x10;
+            if (pid == 0 || (out[p + 1] & 0x40) == 0 || !payloadOnly || out[section] != 0x02) continue;
+            int entry = section + 12 + (((out[section + 10] & 0x0F) << 8) | (out[section + 11] & 0xFF));
+            for (; entry < p + 188 && out[entry] != (byte) 0xFF; entry += 5 + (out[entry + 4] & 0xFF)) {
+                if (out[entry] == 0x1B) out[entry] = 0x24;
+            }
+        }
+        return out;
+    }
+
+    private static byte[] remuxAll() throws IOException {
+        TsRemuxer remuxer = new TsRemuxer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < SEGMENTS; i++) out.write(remuxer.remux(segment(i)));
+        return out.toByteArray();
+    }
+
+    private File download() throws IOException {
+        downloadAs();
+        return new File(folder, "clip.mp4");
+    }
+
+    private void downloadAs() throws IOException {
+        downloadWith(1, 1 << 20);
+    }
+
+    private void downloadWith(int concurrency, long maxBufferedBytes) throws IOException {
+        new HlsSegmentDownloader(http, concurrency, maxBufferedBytes, new TransferOptions(8192, false, 0, false, 2, 2),
+                true, Throttle.NONE, Log.NONE)
+                .download(segments, List.of(), extension -> new File(folder, "clip" + extension), new TransferProgress());
+    }
+
+    private void interruptAt(int index) {
+        failingPath = "/segment" + index + ".ts";
+        failNext.set(true);
+        assertThrows(IOException.class, this::download);
+        assertTrue(new File(folder, "clip.mp4" + DownloadJournal.SUFFIX).isFile());
+    }
+
+    @Test
+    void remuxesSegmentsIntoOneMp4() throws IOException {
+        assertArrayEquals(remuxAll(), Files.readAllBytes(download().toPath()));
+        assertFalse(new File(folder, "clip.mp4" + DownloadJournal.SUFFIX).exists());
+    }
+
+    @Test
+    void segmentsInFlightCountAgainstTheBufferCap() throws IOException {
+        responseDelayMillis = 100;
+
+        downloadWith(4, 1);
+
+        assertArrayEquals(remuxAll(), Files.readAllBytes(new File(folder, "clip.mp4").toPath()));
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    void resumesRemuxAfterPartialWrite() throws IOException {
+        interruptAt(2);
+
+        File out = download();
+
+        assertArrayEquals(remuxAll(), Files.readAllBytes(out.toPath()));
+        assertEquals(1, server.count("GET", "/segment0.ts"), "segment 0 fetched again");
+    }
+
+    @Test
+    void restartsRemuxWhenResumeSegmentLacksParameterSets() throws IOException {
+        interruptAt(1);
+
+        File out = download();
+
+        assertArrayEquals(remuxAll(), Files.readAllBytes(out.toPath()));
+        assertEquals(2, server.count("GET", "/segment0.ts"));
+    }
+
+    @Test
+    void fallsBackToTsWhenALaterSegmentCannotBeRemuxed() throws IOException {
+        bodies[2] = withHevcVideo(bodies[2]);
+
+        downloadAs();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (byte[] body : bodies) expected.write(body);
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(new File(folder, "clip.ts").toPath()));
+        assertFalse(new File(folder, "clip.mp4").exists());
+        assertFalse(new File(folder, "clip.mp4" + DownloadJournal.SUFFIX).exists());
+        assertFalse(new File(folder, "clip.ts" + DownloadJournal.SUFFIX).exists());
+    }
+}
@@ -0,0 +1,70 @@
+package org.ts.clipharbor.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ts.clipharbor.extract.ExtractionCache;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.log.LogLevel;
+import org.ts.clipharbor.net.StubServer;
+import org.ts.clipharbor.queue.DownloadJob;
+import org.ts.clipharbor.queue.JobState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClipHarborEngineTest {
+
+    @TempDir
+    File folder;
+
+    private final byte[] clip = new byte[200_000];
+    private final ByteArrayOutputStream logged = new ByteArrayOutputStream();
+    private StubServer server;
+    private ClipHarborEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(5).nextBytes(clip);
+        byte[] page = """
+                <html><body>
+                <h1>Fixture</h1>
+                <video controls src="/media/clip.mp4"></video>
+                </body></html>
+                """.getBytes(StandardCharsets.UTF_8);
+        server = new StubServer()
+                .route("/watch/fixture.html", exchange -> StubServer.respond(exchange, 200, "text/html", page))
+                .route("/media/clip.mp4", StubServer.file(clip, "video/mp4", true));
+        EngineSettings settings = EngineSettings.DEFAULTS
+                .withExtractionCache(null, ExtractionCache.DEFAULT_TTL);
+        engine = new ClipHarborEngine(settings, Log.to(new PrintStream(logged, true, StandardCharsets.UTF_8), LogLevel.DEBUG));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+        server.close();
+    }
+
+    @Test
+    void staticPageSkipsTheBrowser() throws Exception {
+        List<DownloadJob> jobs = engine.scheduler().submit(List.of(server.url("/watch/fixture.html")), folder);
+        engine.scheduler().awaitIdle();
+
+        DownloadJob job = jobs.get(0);
+        assertEquals(JobState.DONE, job.state(), job.message());
+        assertArrayEquals(clip, Files.readAllBytes(job.outputFile().toPath()));
+        String log = logged.toString(StandardCharsets.UTF_8);
+        assertTrue(log.contains("Found video link: " + server.url("/media/clip.mp4")), log);
+        assertFalse(log.contains("Selenium"), log);
+    }
+}
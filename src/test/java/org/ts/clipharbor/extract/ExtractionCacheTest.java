@@ -0,0 +1,32 @@
+package org.ts.clipharbor.extract;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ts.clipharbor.log.Log;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractionCacheTest {
+
+    @TempDir
+    File folder;
+
+    private ExtractionCache open(File file) {
+        return new ExtractionCache(file, ExtractionCache.DEFAULT_TTL, ExtractionCache.DEFAULT_MAX_ENTRIES, Log.NONE);
+    }
+
+    @Test
+    void entriesSurviveAReload() {
+        File file = new File(folder, "cache.tsv");
+        open(file).put("https://example.com/watch#t=10", List.of("https://cdn.example.com/a.m3u8"), "\"v1\"", null);
+
+        ExtractionCache.Entry entry = open(file).get("https://example.com/watch");
+
+        assertEquals(List.of("https://cdn.example.com/a.m3u8"), entry.candidates());
+        assertEquals("\"v1\"", entry.etag());
+        assertNull(entry.lastModified());
+    }
+}
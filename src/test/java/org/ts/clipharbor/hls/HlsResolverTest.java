@@ -0,0 +1,102 @@
+package org.ts.clipharbor.hls;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ts.clipharbor.log.Log;
+import org.ts.clipharbor.net.HostHealth;
+import org.ts.clipharbor.net.HttpService;
+import org.ts.clipharbor.net.Retrier;
+import org.ts.clipharbor.net.RetryPolicy;
+import org.ts.clipharbor.net.StubServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HlsResolverTest {
+
+    private static final String MEDIA = "#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4,\nseg0.ts\n#EXTINF:4,\nseg1.ts\n#EXT-X-ENDLIST\n";
+
+    private static final String AUDIO_GROUPS = "#EXTM3U\n"
+            + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"Commentary\",LANGUAGE=\"en\",URI=\"commentary.m3u8\"\n"
+            + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"English\",LANGUAGE=\"en\",DEFAULT=YES,AUTOSELECT=YES,URI=\"english.m3u8\"\n"
+            + "#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",NAME=\"English\",URI=\"subs.m3u8\"\n";
+
+    private StubServer server;
+    private HlsResolver resolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubServer();
+        for (String name : new String[] {"hd.m3u8", "sd.m3u8", "english.m3u8", "commentary.m3u8"}) {
+            serve("/" + name, MEDIA);
+        }
+        HttpService http = new HttpService(Duration.ofSeconds(5), Duration.ofSeconds(5), "test",
+                new Retrier(RetryPolicy.DEFAULT, new HostHealth(Duration.ofSeconds(5)), d -> {}, new Random(1), Log.NONE));
+        resolver = new HlsResolver(http, HlsResolver.DEFAULT_CACHE_TTL, Log.NONE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.shutdown();
+        server.close();
+    }
+
+    private void serve(String path, String playlist) {
+        byte[] body = playlist.getBytes(StandardCharsets.UTF_8);
+        server.route(path, exchange -> StubServer.respond(exchange, 200, "application/vnd.apple.mpegurl", body));
+    }
+
+    @Test
+    void parsesAudioRenditionsAndGroups() {
+        HlsPlaylist master = HlsParser.parse(URI.create("https://cdn.example.com/v/master.m3u8"), AUDIO_GROUPS
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000,CODECS=\"avc1.640028,mp4a.40.2\",AUDIO=\"aac\"\nhd.m3u8\n");
+
+        assertEquals(2, master.audio().size());
+        HlsVariant variant = master.variants().get(0);
+        assertEquals("aac", variant.audioGroup());
+        HlsRendition audio = master.audioFor(variant);
+        assertEquals("English", audio.name());
+        assertEquals("https://cdn.example.com/v/english.m3u8", audio.uri());
+    }
+
+    @Test
+    void prefersVariantCarryingItsOwnAudio() throws IOException {
+        serve("/master.m3u8", AUDIO_GROUPS
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000,CODECS=\"avc1.640028,mp4a.40.2\",AUDIO=\"aac\"\nhd.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1000000,CODECS=\"avc1.4d401e,mp4a.40.2\"\nsd.m3u8\n");
+
+        HlsResolver.ResolvedStream stream = resolver.resolve(server.url("/master.m3u8"));
+
+        assertEquals(server.url("/sd.m3u8"), stream.variant().uri());
+        assertNull(stream.audio());
+    }
+
+    @Test
+    void resolvesSeparateAudioWhenEveryVariantIsDemuxed() throws IOException {
+        serve("/master.m3u8", AUDIO_GROUPS
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000,CODECS=\"avc1.640028,mp4a.40.2\",AUDIO=\"aac\"\nhd.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1000000,CODECS=\"avc1.4d401e,mp4a.40.2\",AUDIO=\"aac\"\nsd.m3u8\n");
+
+        HlsResolver.ResolvedStream stream = resolver.resolve(server.url("/master.m3u8"));
+
+        assertEquals(server.url("/hd.m3u8"), stream.variant().uri());
+        assertNotNull(stream.audio());
+        assertEquals(URI.create(server.url("/english.m3u8")), stream.audio().uri());
+        assertEquals(2, stream.audio().segments().size());
+    }
+
+    @Test
+    void ranksSilentVariantsLast() {
+        HlsPlaylist master = HlsParser.parse(URI.create("https://cdn.example.com/master.m3u8"), "#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000,CODECS=\"avc1.640028\"\nhd.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1000000\nsd.m3u8\n");
+
+        assertEquals("https://cdn.example.com/sd.m3u8", HlsResolver.rank(master).get(0).uri());
+    }
+}
@@ -0,0 +1,146 @@
+package org.ts.clipharbor.net;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ts.clipharbor.log.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Retries and circuit breaking against a stub server, on a fake clock that only the sleeper advances. */
+class RetrierTest {
+
+    private static final RetryPolicy POLICY = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1),
+            Duration.ofSeconds(30));
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private final List<Duration> sleeps = new CopyOnWriteArrayList<>();
+    private final Retrier.Sleeper sleeper = duration -> {
+        sleeps.add(duration);
+        clock.addAndGet(duration.toNanos());
+    };
+    private final ConcurrentLinkedQueue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger fallbackStatus = new AtomicInteger(200);
+    private StubServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new StubServer().route("/clip", exchange -> {
+            Integer status = statuses.poll();
+            StubServer.respond(exchange, status != null ? status : fallbackStatus.get(), "text/plain",
+                    "ok".getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    private HostHealth health(int failureThreshold) {
+        return new HostHealth(failureThreshold, Duration.ofSeconds(5), Duration.ofSeconds(60), Duration.ofSeconds(5),
+                Duration.ofSeconds(5), clock::get);
+    }
+
+    private HttpService http(RetryPolicy policy, HostHealth health) {
+        return new HttpService(Duration.ofSeconds(5), Duration.ofSeconds(5), "test",
+                new Retrier(policy, health, sleeper, new Random(7), Log.NONE));
+    }
+
+    @Test
+    void retriesServerErrorsWithBoundedBackoff() throws IOException {
+        statuses.addAll(List.of(503, 500));
+
+        byte[] body = http(POLICY, health(10)).getBytes(server.url("/clip"));
+
+        assertEquals("ok", new String(body, StandardCharsets.UTF_8));
+        assertEquals(3, server.count("GET", "/clip"));
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(0).compareTo(Duration.ofMillis(100)) <= 0, "first delay " + sleeps.get(0));
+        assertTrue(sleeps.get(1).compareTo(Duration.ofMillis(200)) <= 0, "second delay " + sleeps.get(1));
+    }
+
+    @Test
+    void givesUpOnServerErrorsAfterMaxAttempts() {
+        fallbackStatus.set(502);
+
+        HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> http(POLICY, health(10)).getBytes(server.url("/clip")));
+
+        assertEquals(502, e.status());
+        assertEquals(3, server.count("GET", "/clip"));
+        assertEquals(2, sleeps.size());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        fallbackStatus.set(404);
+
+        HttpStatusException e = assertThrows(HttpStatusException.class,
+                () -> http(POLICY, health(10)).getBytes(server.url("/clip")));
+
+        assertEquals(404, e.status());
+        assertEquals(1, server.count("GET", "/clip"));
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void openCircuitHoldsCallsBackUntilHalfOpenProbeSucceeds() throws IOException {
+        HttpService http = http(POLICY, health(3));
+        fallbackStatus.set(503);
+        assertThrows(HttpStatusException.class, () -> http.getBytes(server.url("/clip")));
+        assertEquals(3, server.count("GET", "/clip"));
+
+        // Open: a caller with somewhere else to go is turned away without a request.
+        assertThrows(CircuitOpenException.class, () -> http.getBytes(server.url("/clip"), false));
+        assertEquals(3, server.count("GET", "/clip"));
+
+        // After the cooldown one probe goes through; its success closes the circuit.
+        fallbackStatus.set(200);
+        sleeps.clear();
+        assertEquals("ok", new String(http.getBytes(server.url("/clip")), StandardCharsets.UTF_8));
+        assertEquals(4, server.count("GET", "/clip"));
+        assertEquals(List.of(Duration.ofSeconds(5)), sleeps);
+
+        sleeps.clear();
+        http.getBytes(server.url("/clip"), false);
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void failedHalfOpenProbeReopensWithLongerCooldown() {
+        HostHealth health = health(1);
+        HttpService http = http(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(30)), health);
+        fallbackStatus.set(503);
+        assertThrows(HttpStatusException.class, () -> http.getBytes(server.url("/clip")));
+        assertEquals(Duration.ofSeconds(5), health.acquire("127.0.0.1"));
+
+        assertThrows(HttpStatusException.class, () -> http.getBytes(server.url("/clip")));
+
+        assertEquals(2, server.count("GET", "/clip"));
+        assertEquals(List.of(Duration.ofSeconds(5)), sleeps);
+        assertEquals(Duration.ofSeconds(10), health.acquire("127.0.0.1"));
+    }
+
+    @Test
+    void openCircuitFailsOnceTheCircuitWaitIsUsedUp() {
+        HttpService http = http(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(2)), health(1));
+        fallbackStatus.set(503);
+        assertThrows(HttpStatusException.class, () -> http.getBytes(server.url("/clip")));
+
+        assertThrows(CircuitOpenException.class, () -> http.getBytes(server.url("/clip")));
+
+        assertEquals(1, server.count("GET", "/clip"));
+        assertEquals(List.of(Duration.ofSeconds(2)), sleeps);
+    }
+}
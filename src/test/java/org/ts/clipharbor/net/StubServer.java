@@ -0,0 +1,107 @@
+package org.ts.clipharbor.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A loopback HTTP server for tests that records every request it is sent. */
+public final class StubServer implements AutoCloseable {
+
+    // Small responses would otherwise wait out the client's delayed ACK.
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /** One request as seen by the server; {@code range} is {@code null} without a Range header. */
+    public record Request(String method, String path, String range) {}
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-http");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    public StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public StubServer route(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            requests.add(new Request(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getRequestHeaders().getFirst("Range")));
+            try (exchange) {
+                handler.handle(exchange);
+            }
+        });
+        return this;
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    public List<Request> requests() {
+        return List.copyOf(requests);
+    }
+
+    public long count(String method, String path) {
+        return requests.stream().filter(r -> r.method().equals(method) && r.path().equals(path)).count();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** Sends {@code body} with {@code status}; a {@code HEAD} gets the headers only. */
+    public static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Serves {@code body} with an {@code ETag}. With {@code honorRanges} a single byte range is
+     * answered with {@code 206}; without it {@code Accept-Ranges} is still advertised but every GET
+     * gets the whole body, like a misconfigured CDN.
+     */
+    public static HttpHandler file(byte[] body, String contentType, boolean honorRanges) {
+        return exchange -> {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", "\"" + body.length + "\"");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (!honorRanges || range == null || !range.startsWith("bytes=")) {
+                respond(exchange, 200, contentType, body);
+                return;
+            }
+            String[] bounds = range.substring(6).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? body.length - 1 : Math.min(body.length - 1, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            byte[] part = Arrays.copyOfRange(body, start, end + 1);
+            respond(exchange, 206, contentType, part);
+        };
+    }
+}
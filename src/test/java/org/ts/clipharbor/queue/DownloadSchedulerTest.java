@@ -0,0 +1,103 @@
+package org.ts.clipharbor.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ts.clipharbor.download.DownloadJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadSchedulerTest {
+
+    private static final String PAGE = "https://example.com/clips/show.html";
+
+    @TempDir
+    File folder;
+
+    private final Map<Integer, File> allocated = new ConcurrentHashMap<>();
+    private DownloadScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    private void runAll(DownloadScheduler.JobRunner runner, String... urls) throws InterruptedException {
+        scheduler = new DownloadScheduler(1, 1, runner);
+        scheduler.submit(List.of(urls), folder);
+        scheduler.awaitIdle();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void releasesEveryOutputAJobAllocated() throws Exception {
+        runAll(job -> {
+            scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/a.m3u8");
+            File ts = scheduler.allocateOutput(job, ".ts", "https://cdn.example.com/a.m3u8");
+            Files.write(ts.toPath(), new byte[] {1});
+            new File(ts.getPath() + DownloadJournal.SUFFIX).delete();
+        }, PAGE);
+
+        assertFalse(new File(folder, "show.mp4" + DownloadJournal.SUFFIX).exists(), "unused claim left behind");
+        runAll(job -> allocated.put(job.id(), scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/a.m3u8")),
+                PAGE);
+        assertEquals(new File(folder, "show.mp4"), allocated.get(1));
+    }
+
+    @Test
+    void resumesOnlyAJournalFromTheSameSource() throws Exception {
+        File partial = new File(folder, "show.mp4");
+        Files.write(partial.toPath(), new byte[] {1, 2, 3});
+        DownloadJournal.claim(partial, PAGE + " https://cdn.example.com/a.mp4");
+
+        runAll(job -> allocated.put(job.id(), scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/b.mp4")),
+                PAGE);
+        assertEquals(new File(folder, "show-2.mp4"), allocated.get(1));
+
+        runAll(job -> allocated.put(job.id(), scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/a.mp4?token=2")),
+                PAGE);
+        assertEquals(partial, allocated.get(1));
+    }
+
+    @Test
+    void errorsFailTheJob() throws Exception {
+        runAll(job -> {
+            throw new NoClassDefFoundError("org/openqa/selenium/WebDriver");
+        }, PAGE);
+
+        DownloadJob job = scheduler.jobs().get(0);
+        assertEquals(JobState.FAILED, job.state());
+        assertEquals("org/openqa/selenium/WebDriver", job.message());
+    }
+
+    @Test
+    void concurrentJobsGetDistinctNames() throws Exception {
+        scheduler = new DownloadScheduler(2, 2, job -> {
+            allocated.put(job.id(), scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/a.mp4"));
+            Thread.sleep(100);
+        });
+        scheduler.submit(List.of(PAGE, PAGE), folder);
+        scheduler.awaitIdle();
+
+        assertNotEquals(allocated.get(1), allocated.get(2));
+    }
+
+    @Test
+    void failedJobKeepsItsJournalForResume() throws Exception {
+        runAll(job -> {
+            File out = scheduler.allocateOutput(job, ".mp4", "https://cdn.example.com/a.mp4");
+            Files.write(out.toPath(), new byte[] {1});
+            throw new IOException("connection reset");
+        }, PAGE);
+
+        assertTrue(new File(folder, "show.mp4" + DownloadJournal.SUFFIX).isFile());
+        assertEquals(JobState.FAILED, scheduler.jobs().get(0).state());
+    }
+}
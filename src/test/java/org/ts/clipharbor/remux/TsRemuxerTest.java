@@ -0,0 +1,112 @@
+package org.ts.clipharbor.remux;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsRemuxerTest {
+
+    // Three 1/3 s segments of H.264 and 44.1 kHz stereo AAC; the second carries no SPS/PPS.
+    static final int SEGMENTS = 3;
+
+    private static final Set<String> CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "dinf", "stbl", "mvex",
+            "moof", "traf");
+
+    static final String GOLDEN_LAYOUT = "ftyp moov(mvhd"
+            + " trak(tkhd mdia(mdhd hdlr minf(vmhd dinf(dref) stbl(stsd stts stsc stco stsz))))"
+            + " trak(tkhd mdia(mdhd hdlr minf(smhd dinf(dref) stbl(stsd stts stsc stco stsz))))"
+            + " mvex(trex trex))"
+            + " moof(mfhd traf(tfhd tfdt=0 trun*10) traf(tfhd tfdt=0 trun*14)) mdat"
+            + " moof(mfhd traf(tfhd tfdt=30000 trun*10) traf(tfhd tfdt=15360 trun*14)) mdat"
+            + " moof(mfhd traf(tfhd tfdt=60000 trun*10) traf(tfhd tfdt=29696 trun*14)) mdat";
+
+    static byte[] segment(int index) {
+        try (InputStream in = TsRemuxerTest.class.getResourceAsStream("segment" + index + ".ts")) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] remuxAll() throws IOException {
+        TsRemuxer remuxer = new TsRemuxer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < SEGMENTS; i++) out.write(remuxer.remux(segment(i)));
+        return out.toByteArray();
+    }
+
+    /** The box tree, with the decode time of each fragment run and its sample count. */
+    static String layout(byte[] mp4) {
+        List<String> boxes = new ArrayList<>();
+        walk(ByteBuffer.wrap(mp4), 0, mp4.length, boxes);
+        return String.join(" ", boxes);
+    }
+
+    private static void walk(ByteBuffer buf, int start, int end, List<String> out) {
+        int p = start;
+        while (p + 8 <= end) {
+            int size = buf.getInt(p);
+            String type = new String(buf.array(), p + 4, 4, StandardCharsets.US_ASCII);
+            if (CONTAINERS.contains(type)) {
+                List<String> children = new ArrayList<>();
+                walk(buf, p + 8, p + size, children);
+                out.add(type + "(" + String.join(" ", children) + ")");
+            } else if (type.equals("tfdt")) {
+                out.add("tfdt=" + buf.getLong(p + 12));
+            } else if (type.equals("trun")) {
+                out.add("trun*" + buf.getInt(p + 12));
+            } else {
+                out.add(type);
+            }
+            p += size;
+        }
+        assertEquals(end, p, "box sizes do not add up");
+    }
+
+    @Test
+    void remuxesToKnownLayout() throws IOException {
+        TsRemuxer remuxer = new TsRemuxer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < SEGMENTS; i++) out.write(remuxer.remux(segment(i)));
+
+        assertEquals(GOLDEN_LAYOUT, layout(out.toByteArray()));
+        assertEquals("avc1.64001f,mp4a.40.2", remuxer.codecs());
+    }
+
+    @Test
+    void resumedRemuxerContinuesTheSameTimeline() throws IOException {
+        TsRemuxer first = new TsRemuxer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(first.remux(segment(0)));
+        out.write(first.remux(segment(1)));
+
+        TsRemuxer resumed = TsRemuxer.fromState(first.state());
+        out.write(resumed.remux(segment(2)));
+
+        assertArrayEquals(remuxAll(), out.toByteArray());
+    }
+
+    @Test
+    void resumingAtASegmentWithoutParameterSetsFails() throws IOException {
+        TsRemuxer first = new TsRemuxer();
+        first.remux(segment(0));
+
+        TsRemuxer resumed = TsRemuxer.fromState(first.state());
+        assertThrows(IOException.class, () -> resumed.remux(segment(1)));
+    }
+
+    @Test
+    void rejectsUnrecognisedState() {
+        assertThrows(IllegalArgumentException.class, () -> TsRemuxer.fromState("0,true"));
+    }
+}